@@ -0,0 +1,190 @@
+package com.jackylibrary.compiler;
+
+import com.jackylibrary.compiler.JackyEntityProcessor.EntityModel;
+import com.jackylibrary.compiler.JackyEntityProcessor.FieldModel;
+import com.jackylibrary.compiler.JackyEntityProcessor.FieldType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 負責將 EntityModel 轉成 JackyEntityBinding 子類別的原始碼
+ */
+class BindingWriter {
+
+    private static final String INDENT = "    ";
+
+    static String generate(EntityModel model) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("// Generated by JackyEntityProcessor. Do not modify.\n");
+        if (!model.packageName.isEmpty()) {
+            sb.append("package ").append(model.packageName).append(";\n\n");
+        }
+        sb.append("import android.database.Cursor;\n")
+                .append("import android.database.sqlite.SQLiteStatement;\n\n")
+                .append("import com.jackylibrary.JackyDBHelper;\n")
+                .append("import com.jackylibrary.model.JackyDao;\n")
+                .append("import com.jackylibrary.model.JackyEntity;\n")
+                .append("import com.jackylibrary.model.JackyEntityBinding;\n\n")
+                .append("import java.util.ArrayList;\n\n");
+
+        sb.append("public final class ").append(model.bindingName).append(" extends JackyEntityBinding {\n\n");
+        writeColumnNames(sb, model);
+        writeGetColumnInfos(sb, model);
+        writeGetIndexInfos(sb, model);
+        writeGetColumnNames(sb);
+        writeNewEntity(sb, model);
+        writeReadFields(sb, model);
+        writeBindInsert(sb, model);
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static void writeColumnNames(StringBuilder sb, EntityModel model) {
+        sb.append(INDENT).append("private static final String[] COLUMN_NAMES = {");
+        for (int i = 0; i < model.fields.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('"').append(model.fields.get(i).name).append('"');
+        }
+        sb.append("};\n\n");
+    }
+
+    private static void writeGetColumnInfos(StringBuilder sb, EntityModel model) {
+        sb.append(INDENT).append("@Override\n")
+                .append(INDENT).append("public ArrayList<JackyDao.ColumnInfo> getColumnInfos() {\n")
+                .append(INDENT).append(INDENT).append("ArrayList<JackyDao.ColumnInfo> columnInfos = new ArrayList<>();\n");
+        for (FieldModel field : model.fields) {
+            sb.append(INDENT).append(INDENT)
+                    .append("columnInfos.add(new JackyDao.ColumnInfo(\"").append(field.name)
+                    .append("\", JackyDBHelper.DataType.").append(field.type.dataType)
+                    .append(", false, ").append(toJavaStringLiteral(field.type.defaultValue)).append("));\n");
+        }
+        sb.append(INDENT).append(INDENT).append("return columnInfos;\n")
+                .append(INDENT).append("}\n\n");
+    }
+
+    /**
+     * 與 JackyDao.addColumnInfosByEntity() 的規則相同
+     * 沒有指定 name 的欄位各自建立索引 相同 name 的欄位依宣告順序合併成複合索引
+     *
+     * @param sb
+     * @param model
+     */
+    private static void writeGetIndexInfos(StringBuilder sb, EntityModel model) {
+        ArrayList<FieldModel> unnamedFields = new ArrayList<>();
+        LinkedHashMap<String, ArrayList<FieldModel>> namedFields = new LinkedHashMap<>();
+        for (FieldModel field : model.fields) {
+            if (!field.isIndexed) {
+                continue;
+            }
+            if (field.indexName.isEmpty()) {
+                unnamedFields.add(field);
+            } else {
+                ArrayList<FieldModel> fields = namedFields.get(field.indexName);
+                if (fields == null) {
+                    fields = new ArrayList<>();
+                    namedFields.put(field.indexName, fields);
+                }
+                fields.add(field);
+            }
+        }
+        if (unnamedFields.isEmpty() && namedFields.isEmpty()) {
+            return;
+        }
+        sb.append(INDENT).append("@Override\n")
+                .append(INDENT).append("public ArrayList<JackyDao.IndexInfo> getIndexInfos() {\n")
+                .append(INDENT).append(INDENT).append("ArrayList<JackyDao.IndexInfo> indexInfos = new ArrayList<>();\n");
+        for (FieldModel field : unnamedFields) {
+            writeIndexInfo(sb, "", field.isUniqueIndex, Collections.singletonList(field));
+        }
+        for (Map.Entry<String, ArrayList<FieldModel>> entry : namedFields.entrySet()) {
+            writeIndexInfo(sb, entry.getKey(), entry.getValue().get(0).isUniqueIndex, entry.getValue());
+        }
+        sb.append(INDENT).append(INDENT).append("return indexInfos;\n")
+                .append(INDENT).append("}\n\n");
+    }
+
+    private static void writeIndexInfo(StringBuilder sb, String indexName, boolean isUnique, List<FieldModel> fields) {
+        sb.append(INDENT).append(INDENT).append("indexInfos.add(new JackyDao.IndexInfo(")
+                .append(toJavaStringLiteral(indexName)).append(", ").append(isUnique).append(", new String[]{");
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('"').append(fields.get(i).name).append('"');
+        }
+        sb.append("}));\n");
+    }
+
+    private static void writeGetColumnNames(StringBuilder sb) {
+        sb.append(INDENT).append("@Override\n")
+                .append(INDENT).append("public String[] getColumnNames() {\n")
+                .append(INDENT).append(INDENT).append("return COLUMN_NAMES;\n")
+                .append(INDENT).append("}\n\n");
+    }
+
+    private static void writeNewEntity(StringBuilder sb, EntityModel model) {
+        sb.append(INDENT).append("@Override\n")
+                .append(INDENT).append("public JackyEntity newEntity() {\n")
+                .append(INDENT).append(INDENT).append("return new ").append(model.entityName).append("();\n")
+                .append(INDENT).append("}\n\n");
+    }
+
+    private static void writeReadFields(StringBuilder sb, EntityModel model) {
+        sb.append(INDENT).append("@Override\n")
+                .append(INDENT).append("public void readFields(Cursor cursor, int[] columnIndices, JackyEntity entity) {\n");
+        if (!model.fields.isEmpty()) {
+            sb.append(INDENT).append(INDENT).append(model.entityName).append(" target = (")
+                    .append(model.entityName).append(") entity;\n");
+        }
+        for (int i = 0; i < model.fields.size(); i++) {
+            FieldModel field = model.fields.get(i);
+            sb.append(INDENT).append(INDENT).append("if (columnIndices[").append(i).append("] != -1) {\n")
+                    .append(INDENT).append(INDENT).append(INDENT).append("target.").append(field.setterName).append("(");
+            if (field.type == FieldType.BYTE) {
+                sb.append("(byte) ");
+            }
+            sb.append("cursor.").append(field.type.cursorGetter).append("(columnIndices[").append(i).append("]));\n")
+                    .append(INDENT).append(INDENT).append("}\n");
+        }
+        sb.append(INDENT).append("}\n\n");
+    }
+
+    private static void writeBindInsert(StringBuilder sb, EntityModel model) {
+        sb.append(INDENT).append("@Override\n")
+                .append(INDENT).append("public void bindInsert(SQLiteStatement statement, JackyEntity entity) {\n");
+        if (!model.fields.isEmpty()) {
+            sb.append(INDENT).append(INDENT).append(model.entityName).append(" target = (")
+                    .append(model.entityName).append(") entity;\n");
+        }
+        for (int i = 0; i < model.fields.size(); i++) {
+            FieldModel field = model.fields.get(i);
+            int bindIndex = i + 1;
+            if (field.type == FieldType.STRING) {
+                String valueName = "value" + bindIndex;
+                sb.append(INDENT).append(INDENT).append("String ").append(valueName).append(" = target.")
+                        .append(field.getterName).append("();\n")
+                        .append(INDENT).append(INDENT).append("if (").append(valueName).append(" == null) {\n")
+                        .append(INDENT).append(INDENT).append(INDENT).append("statement.bindNull(")
+                        .append(bindIndex).append(");\n")
+                        .append(INDENT).append(INDENT).append("} else {\n")
+                        .append(INDENT).append(INDENT).append(INDENT).append("statement.bindString(")
+                        .append(bindIndex).append(", ").append(valueName).append(");\n")
+                        .append(INDENT).append(INDENT).append("}\n");
+            } else {
+                sb.append(INDENT).append(INDENT).append("statement.").append(field.type.statementBinder).append("(")
+                        .append(bindIndex).append(", target.").append(field.getterName).append("());\n");
+            }
+        }
+        sb.append(INDENT).append("}\n");
+    }
+
+    private static String toJavaStringLiteral(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,334 @@
+package com.jackylibrary.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * 在編譯期掃描所有 JackyEntity 的子類別 並為每個類別產生對應的 JackyEntityBinding
+ * 產生的類別提供欄位資訊 cursor 轉 entity 以及 insert 綁定 讓 JackyDao 不需要在執行期使用反射
+ * 無法處理的類別 (例如缺少 setter / getter 或沒有可用的無參數建構子) 會略過 執行期會自動改走反射的流程
+ * <p>
+ * 使用方式: 在 app 的 build.gradle 加上 annotationProcessor 指向此 module 即可
+ */
+public class JackyEntityProcessor extends AbstractProcessor {
+
+    static final String ENTITY_CLASS_NAME = "com.jackylibrary.model.JackyEntity";
+    static final String BINDING_POSTFIX = "_JackyBinding";
+    static final String INDEXED_CLASS_NAME = "com.jackylibrary.model.Indexed";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        //JackyEntity 不需要任何 annotation 所以要接收所有的 root element 自行判斷
+        return Collections.singleton("*");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement entityElement = processingEnv.getElementUtils().getTypeElement(ENTITY_CLASS_NAME);
+        if (entityElement == null) {
+            //classpath 中沒有 jackylibrary 不需要處理
+            return false;
+        }
+        ArrayList<TypeElement> typeElements = new ArrayList<>();
+        for (Element element : roundEnv.getRootElements()) {
+            collectTypeElements(element, typeElements);
+        }
+        for (TypeElement typeElement : typeElements) {
+            if (isBindableEntity(typeElement, entityElement.asType())) {
+                EntityModel model = buildModel(typeElement);
+                if (model != null) {
+                    writeBinding(model);
+                }
+            }
+        }
+        //不宣告任何 annotation 為已處理 讓其他 processor 正常運作
+        return false;
+    }
+
+    private void collectTypeElements(Element element, List<TypeElement> result) {
+        if (element.getKind() == ElementKind.CLASS) {
+            result.add((TypeElement) element);
+        }
+        for (Element enclosed : element.getEnclosedElements()) {
+            if (enclosed.getKind() == ElementKind.CLASS) {
+                collectTypeElements(enclosed, result);
+            }
+        }
+    }
+
+    private boolean isBindableEntity(TypeElement typeElement, TypeMirror entityType) {
+        if (typeElement.getQualifiedName().contentEquals(ENTITY_CLASS_NAME)) {
+            return false;
+        }
+        if (!processingEnv.getTypeUtils().isSubtype(typeElement.asType(), entityType)) {
+            return false;
+        }
+        Set<Modifier> modifiers = typeElement.getModifiers();
+        if (modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        //巢狀類別必須是 static 才能在其他類別中直接 new 出來
+        Element enclosing = typeElement.getEnclosingElement();
+        while (enclosing.getKind() != ElementKind.PACKAGE) {
+            if (!modifiers.contains(Modifier.STATIC) || enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            modifiers = enclosing.getModifiers();
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return true;
+    }
+
+    /**
+     * 收集產生綁定類別需要的資訊 有任何欄位無法處理時回傳 null 讓該類別改走反射
+     *
+     * @param typeElement
+     * @return
+     */
+    private EntityModel buildModel(TypeElement typeElement) {
+        if (!hasAccessibleNoArgConstructor(typeElement)) {
+            note(typeElement, "no accessible no-arg constructor, fall back to reflection");
+            return null;
+        }
+        List<ExecutableElement> methods = ElementFilter.methodsIn(typeElement.getEnclosedElements());
+        EntityModel model = new EntityModel();
+        model.packageName = getPackageName(typeElement);
+        model.entityName = getCanonicalNameInPackage(typeElement);
+        model.bindingName = model.entityName.replace('.', '_') + BINDING_POSTFIX;
+        model.originatingElement = typeElement;
+        for (VariableElement field : ElementFilter.fieldsIn(typeElement.getEnclosedElements())) {
+            if (field.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            FieldType fieldType = FieldType.of(field.asType());
+            if (fieldType == null) {
+                continue;
+            }
+            String fieldName = field.getSimpleName().toString();
+            String setterName = "set" + capitalize(fieldName);
+            String getterName = "get" + capitalize(fieldName);
+            if (!hasMethod(methods, setterName, field.asType(), true)) {
+                note(typeElement, "setter " + setterName + " not found, fall back to reflection");
+                return null;
+            }
+            if (!hasMethod(methods, getterName, field.asType(), false)) {
+                note(typeElement, "getter " + getterName + " not found, fall back to reflection");
+                return null;
+            }
+            FieldModel fieldModel = new FieldModel(fieldName, fieldType, setterName, getterName);
+            readIndexed(field, fieldModel);
+            model.fields.add(fieldModel);
+        }
+        return model;
+    }
+
+    /**
+     * 讀取欄位上的 @Indexed 設定 這邊只比對 annotation 名稱 所以 processor 不需要依賴 jackylibrary
+     *
+     * @param field
+     * @param fieldModel
+     */
+    private void readIndexed(VariableElement field, FieldModel fieldModel) {
+        for (AnnotationMirror mirror : field.getAnnotationMirrors()) {
+            if (!mirror.getAnnotationType().toString().equals(INDEXED_CLASS_NAME)) {
+                continue;
+            }
+            fieldModel.isIndexed = true;
+            Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                    processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+                String key = entry.getKey().getSimpleName().toString();
+                if ("unique".equals(key)) {
+                    fieldModel.isUniqueIndex = (Boolean) entry.getValue().getValue();
+                } else if ("name".equals(key)) {
+                    fieldModel.indexName = (String) entry.getValue().getValue();
+                }
+            }
+        }
+    }
+
+    private boolean hasAccessibleNoArgConstructor(TypeElement typeElement) {
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(typeElement.getEnclosedElements());
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getParameters().isEmpty()) {
+                return !constructor.getModifiers().contains(Modifier.PRIVATE);
+            }
+        }
+        return constructors.isEmpty();
+    }
+
+    private boolean hasMethod(List<ExecutableElement> methods, String name, TypeMirror type, boolean isSetter) {
+        for (ExecutableElement method : methods) {
+            if (!method.getSimpleName().contentEquals(name)
+                    || method.getModifiers().contains(Modifier.PRIVATE)
+                    || method.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            if (isSetter) {
+                if (method.getParameters().size() == 1
+                        && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), type)) {
+                    return true;
+                }
+            } else {
+                if (method.getParameters().isEmpty()
+                        && processingEnv.getTypeUtils().isSameType(method.getReturnType(), type)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void writeBinding(EntityModel model) {
+        String qualifiedName = model.packageName.isEmpty()
+                ? model.bindingName : model.packageName + "." + model.bindingName;
+        Writer writer = null;
+        try {
+            JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(qualifiedName, model.originatingElement);
+            writer = sourceFile.openWriter();
+            writer.write(BindingWriter.generate(model));
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "JackyEntityProcessor: can not write " + qualifiedName + ", " + e.getMessage(),
+                    model.originatingElement);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void note(Element element, String msg) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                "JackyEntityProcessor: " + element + " " + msg, element);
+    }
+
+    private String getPackageName(TypeElement typeElement) {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(typeElement);
+        return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+    }
+
+    /**
+     * 回傳不含 package 的類別名稱 巢狀類別會以 . 連接 例如 Outer.Inner
+     *
+     * @param typeElement
+     * @return
+     */
+    private String getCanonicalNameInPackage(TypeElement typeElement) {
+        String packageName = getPackageName(typeElement);
+        String qualifiedName = typeElement.getQualifiedName().toString();
+        return packageName.isEmpty() ? qualifiedName : qualifiedName.substring(packageName.length() + 1);
+    }
+
+    /**
+     * 與 JackyDao 取得 setter 名稱的規則相同 只將第一個字元轉大寫
+     *
+     * @param fieldName
+     * @return
+     */
+    static String capitalize(String fieldName) {
+        if (fieldName.length() == 1) {
+            return fieldName.toUpperCase();
+        }
+        return fieldName.substring(0, 1).toUpperCase() + fieldName.substring(1);
+    }
+
+    enum FieldType {
+        INT("INTEGER", "0", "getInt", "bindLong"),
+        LONG("INTEGER", "0", "getLong", "bindLong"),
+        BYTE("INTEGER", "0", "getInt", "bindLong"),
+        SHORT("INTEGER", "0", "getShort", "bindLong"),
+        FLOAT("REAL", "0", "getFloat", "bindDouble"),
+        DOUBLE("REAL", "0", "getDouble", "bindDouble"),
+        STRING("TEXT", "\"\"", "getString", "bindString");
+
+        final String dataType;
+        final String defaultValue;
+        final String cursorGetter;
+        final String statementBinder;
+
+        FieldType(String dataType, String defaultValue, String cursorGetter, String statementBinder) {
+            this.dataType = dataType;
+            this.defaultValue = defaultValue;
+            this.cursorGetter = cursorGetter;
+            this.statementBinder = statementBinder;
+        }
+
+        static FieldType of(TypeMirror type) {
+            switch (type.getKind()) {
+                case INT:
+                    return INT;
+                case LONG:
+                    return LONG;
+                case BYTE:
+                    return BYTE;
+                case SHORT:
+                    return SHORT;
+                case FLOAT:
+                    return FLOAT;
+                case DOUBLE:
+                    return DOUBLE;
+                case DECLARED:
+                    return "java.lang.String".equals(type.toString()) ? STRING : null;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    static class EntityModel {
+        String packageName;
+        String entityName;
+        String bindingName;
+        Element originatingElement;
+        ArrayList<FieldModel> fields = new ArrayList<>();
+    }
+
+    static class FieldModel {
+        final String name;
+        final FieldType type;
+        final String setterName;
+        final String getterName;
+        boolean isIndexed;
+        boolean isUniqueIndex;
+        String indexName = "";
+
+        FieldModel(String name, FieldType type, String setterName, String getterName) {
+            this.name = name;
+            this.type = type;
+            this.setterName = setterName;
+            this.getterName = getterName;
+        }
+    }
+}
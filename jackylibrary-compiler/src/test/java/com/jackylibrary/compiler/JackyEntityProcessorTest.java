@@ -0,0 +1,251 @@
+package com.jackylibrary.compiler;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.*;
+
+/**
+ * 以 JackyEntityProcessor 編譯範例 entity 確認產生的綁定類別可以編譯 並且名稱與執行期查找的規則一致
+ * processor 不依賴 jackylibrary 所以這邊用最小的 stub 取代 android 與 jackylibrary 的類別
+ */
+public class JackyEntityProcessorTest {
+
+    private static final String[][] STUBS = {
+            {"android.database.Cursor",
+                    "package android.database;\n"
+                            + "public interface Cursor {\n"
+                            + "    int getInt(int index);\n"
+                            + "    long getLong(int index);\n"
+                            + "    short getShort(int index);\n"
+                            + "    float getFloat(int index);\n"
+                            + "    double getDouble(int index);\n"
+                            + "    String getString(int index);\n"
+                            + "}\n"},
+            {"android.database.sqlite.SQLiteStatement",
+                    "package android.database.sqlite;\n"
+                            + "public class SQLiteStatement {\n"
+                            + "    public void bindNull(int index) {}\n"
+                            + "    public void bindLong(int index, long value) {}\n"
+                            + "    public void bindDouble(int index, double value) {}\n"
+                            + "    public void bindString(int index, String value) {}\n"
+                            + "}\n"},
+            {"com.jackylibrary.JackyDBHelper",
+                    "package com.jackylibrary;\n"
+                            + "public class JackyDBHelper {\n"
+                            + "    public enum DataType {INTEGER, REAL, TEXT}\n"
+                            + "}\n"},
+            {"com.jackylibrary.model.JackyEntity",
+                    "package com.jackylibrary.model;\n"
+                            + "public abstract class JackyEntity {\n"
+                            + "}\n"},
+            {"com.jackylibrary.model.Indexed",
+                    "package com.jackylibrary.model;\n"
+                            + "public @interface Indexed {\n"
+                            + "    boolean unique() default false;\n"
+                            + "    String name() default \"\";\n"
+                            + "}\n"},
+            {"com.jackylibrary.model.JackyDao",
+                    "package com.jackylibrary.model;\n"
+                            + "public class JackyDao {\n"
+                            + "    public static class ColumnInfo {\n"
+                            + "        public ColumnInfo(String columnName, com.jackylibrary.JackyDBHelper.DataType dataType,\n"
+                            + "                          boolean isAllowNull, String defaultValue) {}\n"
+                            + "    }\n"
+                            + "    public static class IndexInfo {\n"
+                            + "        public IndexInfo(String indexName, boolean isUnique, String[] columnNames) {}\n"
+                            + "    }\n"
+                            + "}\n"},
+            {"com.jackylibrary.model.JackyEntityBinding",
+                    "package com.jackylibrary.model;\n"
+                            + "import java.util.ArrayList;\n"
+                            + "public abstract class JackyEntityBinding {\n"
+                            + "    public abstract ArrayList<JackyDao.ColumnInfo> getColumnInfos();\n"
+                            + "    public ArrayList<JackyDao.IndexInfo> getIndexInfos() {\n"
+                            + "        return new ArrayList<>();\n"
+                            + "    }\n"
+                            + "    public abstract String[] getColumnNames();\n"
+                            + "    public abstract JackyEntity newEntity();\n"
+                            + "    public abstract void readFields(android.database.Cursor cursor, int[] columnIndices,\n"
+                            + "                                    JackyEntity entity);\n"
+                            + "    public abstract void bindInsert(android.database.sqlite.SQLiteStatement statement,\n"
+                            + "                                    JackyEntity entity);\n"
+                            + "}\n"},
+    };
+
+    private static final String SAMPLE_ENTITY = "package demo;\n"
+            + "import com.jackylibrary.model.Indexed;\n"
+            + "import com.jackylibrary.model.JackyEntity;\n"
+            + "public class Order extends JackyEntity {\n"
+            + "    @Indexed(name = \"customer_date\", unique = true)\n"
+            + "    private String customer;\n"
+            + "    @Indexed(name = \"customer_date\")\n"
+            + "    private long date;\n"
+            + "    @Indexed\n"
+            + "    private int status;\n"
+            + "    private byte flag;\n"
+            + "    public String getCustomer() { return customer; }\n"
+            + "    public void setCustomer(String customer) { this.customer = customer; }\n"
+            + "    public long getDate() { return date; }\n"
+            + "    public void setDate(long date) { this.date = date; }\n"
+            + "    public int getStatus() { return status; }\n"
+            + "    public void setStatus(int status) { this.status = status; }\n"
+            + "    public byte getFlag() { return flag; }\n"
+            + "    public void setFlag(byte flag) { this.flag = flag; }\n"
+            + "\n"
+            + "    public static class Item extends JackyEntity {\n"
+            + "        @Indexed(unique = true)\n"
+            + "        private String sku;\n"
+            + "        private double price;\n"
+            + "        public String getSku() { return sku; }\n"
+            + "        public void setSku(String sku) { this.sku = sku; }\n"
+            + "        public double getPrice() { return price; }\n"
+            + "        public void setPrice(double price) { this.price = price; }\n"
+            + "    }\n"
+            + "\n"
+            + "    public static class Draft extends JackyEntity {\n"
+            + "        private String note;\n"
+            + "        public String getNote() { return note; }\n"
+            + "    }\n"
+            + "}\n";
+
+    @Test
+    public void generateCompilableBindings() throws Exception {
+        File outputDir = createTempDir();
+        try {
+            compile(outputDir);
+
+            String orderBinding = readGenerated(outputDir, "demo/Order_JackyBinding.java");
+            assertTrue(orderBinding.contains("COLUMN_NAMES = {\"customer\", \"date\", \"status\", \"flag\"}"));
+            //相同 name 的欄位合併成複合索引 unique 以第一個欄位為準
+            assertTrue(orderBinding.contains(
+                    "new JackyDao.IndexInfo(\"customer_date\", true, new String[]{\"customer\", \"date\"})"));
+            assertTrue(orderBinding.contains("new JackyDao.IndexInfo(\"\", false, new String[]{\"status\"})"));
+            assertTrue(orderBinding.contains("target.setFlag((byte) cursor.getInt(columnIndices[3]));"));
+
+            String itemBinding = readGenerated(outputDir, "demo/Order_Item_JackyBinding.java");
+            assertTrue(itemBinding.contains("return new Order.Item();"));
+            assertTrue(itemBinding.contains("new JackyDao.IndexInfo(\"\", true, new String[]{\"sku\"})"));
+
+            //缺少 setter 的類別不產生綁定 執行期改走反射
+            assertFalse(new File(outputDir, "demo/Order_Draft_JackyBinding.java").exists());
+
+            //綁定類別的名稱要與 JackyEntityBinding.getBindingClassName() 的規則一致
+            URLClassLoader classLoader = new URLClassLoader(new URL[]{outputDir.toURI().toURL()});
+            try {
+                for (String entityName : new String[]{"demo.Order", "demo.Order$Item"}) {
+                    Class<?> entityClass = Class.forName(entityName, false, classLoader);
+                    Class<?> bindingClass = Class.forName(getBindingClassName(entityClass), true, classLoader);
+                    Object binding = bindingClass.getConstructor().newInstance();
+                    Object entity = bindingClass.getMethod("newEntity").invoke(binding);
+                    assertSame(entityClass, entity.getClass());
+                }
+            } finally {
+                classLoader.close();
+            }
+        } finally {
+            deleteRecursively(outputDir);
+        }
+    }
+
+    private static void compile(File outputDir) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("tests must run on a JDK", compiler);
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.US,
+                Charset.forName("UTF-8"));
+        try {
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(outputDir));
+            fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(outputDir));
+            ArrayList<JavaFileObject> sources = new ArrayList<>();
+            for (String[] stub : STUBS) {
+                sources.add(new SourceFile(stub[0], stub[1]));
+            }
+            sources.add(new SourceFile("demo.Order", SAMPLE_ENTITY));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, null, null, sources);
+            task.setProcessors(Collections.singletonList(new JackyEntityProcessor()));
+            boolean isSuccess = task.call();
+            StringBuilder errors = new StringBuilder();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    errors.append(diagnostic).append('\n');
+                }
+            }
+            assertTrue(errors.toString(), isSuccess);
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    /**
+     * 與 JackyEntityBinding.getBindingClassName() 相同的規則
+     *
+     * @param entityClass
+     * @return
+     */
+    private static String getBindingClassName(Class<?> entityClass) {
+        String className = entityClass.getName();
+        int lastDot = className.lastIndexOf('.');
+        String packagePrefix = lastDot == -1 ? "" : className.substring(0, lastDot + 1);
+        return packagePrefix + className.substring(lastDot + 1).replace('$', '_') + JackyEntityProcessor.BINDING_POSTFIX;
+    }
+
+    private static String readGenerated(File outputDir, String path) throws IOException {
+        File file = new File(outputDir, path);
+        assertTrue(path + " not generated", file.exists());
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        return new String(bytes, "UTF-8");
+    }
+
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile("jacky-processor", "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("can not create " + dir);
+        }
+        return dir;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static class SourceFile extends SimpleJavaFileObject {
+
+        private final String content;
+
+        SourceFile(String className, String content) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+# The bindings generated by jackylibrary-compiler are looked up by class name at runtime,
+# so they must keep their names and no-arg constructors.
+-keep class * extends com.jackylibrary.model.JackyEntityBinding {
+    <init>();
+}
+
+# The binding class name is derived from the entity class name (JackyEntityBinding.getBindingClassName),
+# so entity classes must keep their names as well, otherwise the lookup fails after obfuscation.
+-keepnames class * extends com.jackylibrary.model.JackyEntity
@@ -0,0 +1,308 @@
+package com.jackylibrary;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * 效能比較用的測試 結果輸出在 logcat (tag: JackyLibraryBenchmark)
+ */
+@RunWith(AndroidJUnit4.class)
+public class JackyLibraryBenchmark {
+
+    private static final String TAG = "JackyLibraryBenchmark";
+    private static final int READER_COUNT = 4;
+    private static final long DURATION_MS = 3000;
+    //讀取成字串時約佔 2 倍的記憶體 維持在一般 app heap 可以容納的大小
+    private static final int FILE_BENCHMARK_BYTES = 16 * 1024 * 1024;
+    private static final int FILE_BENCHMARK_ROUNDS = 4;
+
+    /**
+     * 同時有一條執行緒持續寫入時 比較預設設定 (rollback journal) 與 WAL + Synchronous.NORMAL 下的查詢次數
+     * 兩個資料庫都經由 JackyDBHelper.prepare() 開啟 並確認 DBConfig 的 PRAGMA 確實生效
+     */
+    @Test
+    public void benchmarkConcurrentReadsWithWriter() throws InterruptedException {
+        Context appContext = InstrumentationRegistry.getTargetContext();
+        long defaultReads = measureConcurrentReads(appContext, "benchmark_default.db", new JackyDBHelper.DBConfig());
+        long walReads = measureConcurrentReads(appContext, "benchmark_wal.db", new JackyDBHelper.DBConfig()
+                .setWriteAheadLoggingEnabled(true)
+                .setReaderThreadCount(READER_COUNT)
+                .setSynchronous(JackyDBHelper.Synchronous.NORMAL)
+                .setCacheSize(-4000));
+        LogUtils.i(TAG, "concurrent reads in " + DURATION_MS + "ms with " + READER_COUNT + " readers: default="
+                + defaultReads + ", wal=" + walReads);
+        assertTrue(defaultReads > 0);
+        assertTrue(walReads > 0);
+    }
+
+    /**
+     * 比較同步與非同步模式下 呼叫端每次寫 log 的平均耗時 (ns)
+     */
+    @Test
+    public void benchmarkLogCallerCost() {
+        Context appContext = InstrumentationRegistry.getTargetContext();
+        LogUtils.prepare(appContext);
+        LogUtils.enableLogToFile(true);
+        LogUtils.resetLogStatistics();
+        long syncNanos = measureLogCallerNanos(10000);
+        LogUtils.enableAsyncLogging(LogUtils.DEFAULT_ASYNC_CAPACITY, LogUtils.OverflowPolicy.BLOCK);
+        long asyncNanos = measureLogCallerNanos(10000);
+        long droppedCount = LogUtils.getDroppedLogCount();
+        LogUtils.disableAsyncLogging();
+        LogUtils.onlyLogI(TAG, "log caller cost per call: sync=" + syncNanos + "ns, async=" + asyncNanos + "ns");
+        LogUtils.onlyLogI(TAG, LogUtils.getLogStatistics().toString());
+        assertEquals(0, droppedCount);
+    }
+
+    /**
+     * 比較文字與二進位格式寫入檔案的大小 (bytes) 與每筆 log 的耗時 (ns)
+     * 關閉 logcat 只計算格式化與寫入檔案 兩種格式交替執行 取較快的一次 避免執行順序影響結果
+     */
+    @Test
+    public void benchmarkTextVsBinaryLogFormat() {
+        Context appContext = InstrumentationRegistry.getTargetContext();
+        LogUtils.prepare(appContext);
+        LogUtils.enableLogToFile(true);
+        LogUtils.setLogcatEnabled(false);
+        LogUtils.LogFormat originalFormat = LogUtils.getLogFormat();
+        long[] textResult = {Long.MAX_VALUE, 0};
+        long[] binaryResult = {Long.MAX_VALUE, 0};
+        try {
+            for (int round = 0; round < 2; round++) {
+                measureLogFormat(LogUtils.LogFormat.TEXT, 20000, textResult);
+                measureLogFormat(LogUtils.LogFormat.BINARY, 20000, binaryResult);
+            }
+        } finally {
+            LogUtils.setLogFormat(originalFormat);
+            LogUtils.setLogcatEnabled(true);
+        }
+        LogUtils.onlyLogI(TAG, "log format per record: text=" + textResult[0] + "ns " + textResult[1]
+                + " bytes, binary=" + binaryResult[0] + "ns " + binaryResult[1] + " bytes");
+        assertTrue(binaryResult[1] > 0);
+        assertTrue(binaryResult[1] < textResult[1]);
+    }
+
+    /**
+     * @param format
+     * @param count
+     * @param result [0] 每筆的最短耗時 (ns) [1] 寫入的 bytes
+     */
+    private void measureLogFormat(LogUtils.LogFormat format, int count, long[] result) {
+        LogUtils.setLogFormat(format);
+        LogUtils.flushLog();
+        LogUtils.resetLogStatistics();
+        String[] tags = {"MainActivity", "NetworkClient", "DatabaseHelper"};
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            LogUtils.i(tags[i % tags.length], "request " + i + " finished in " + (i % 500) + "ms");
+        }
+        LogUtils.flushLog();
+        long elapsed = System.nanoTime() - start;
+        LogStatistics statistics = LogUtils.getLogStatistics();
+        assertEquals(count, statistics.getWrittenCount());
+        result[0] = Math.min(result[0], elapsed / count);
+        result[1] = statistics.getWrittenBytes();
+    }
+
+    /**
+     * 比較舊的 1KB byte[] 迴圈與 FileUtils 的複製及讀取速度 (MB/s)
+     * 每一輪交換兩種方式的執行順序 各取最快的一次 避免快取與執行順序影響結果
+     * 讀取結果只比較長度 下一次讀取前就釋放 避免同時持有兩份內容
+     */
+    @Test
+    public void benchmarkFileCopyAndRead() throws IOException {
+        Context appContext = InstrumentationRegistry.getTargetContext();
+        File directory = appContext.getCacheDir();
+        File sourceFile = new File(directory, "benchmark_source.txt");
+        File loopCopyFile = new File(directory, "benchmark_copy_loop.txt");
+        File channelCopyFile = new File(directory, "benchmark_copy_channel.txt");
+        writeRandomText(sourceFile, FILE_BENCHMARK_BYTES);
+
+        long loopCopyNanos = Long.MAX_VALUE;
+        long channelCopyNanos = Long.MAX_VALUE;
+        long loopReadNanos = Long.MAX_VALUE;
+        long bufferedReadNanos = Long.MAX_VALUE;
+        for (int round = 0; round < FILE_BENCHMARK_ROUNDS; round++) {
+            boolean isLoopFirst = round % 2 == 0;
+            for (int i = 0; i < 2; i++) {
+                if ((i == 0) == isLoopFirst) {
+                    long start = System.nanoTime();
+                    copyWithByteArray(sourceFile, loopCopyFile, 1024);
+                    loopCopyNanos = Math.min(loopCopyNanos, System.nanoTime() - start);
+                    start = System.nanoTime();
+                    int length = readWithByteArray(sourceFile, 1024).length();
+                    loopReadNanos = Math.min(loopReadNanos, System.nanoTime() - start);
+                    assertEquals(FILE_BENCHMARK_BYTES, length);
+                } else {
+                    long start = System.nanoTime();
+                    FileUtils.copyFile(sourceFile, directory, channelCopyFile.getName());
+                    channelCopyNanos = Math.min(channelCopyNanos, System.nanoTime() - start);
+                    start = System.nanoTime();
+                    int length = FileUtils.readFile(sourceFile, Charset.forName("UTF-8"),
+                            FileUtils.DEFAULT_BUFFER_SIZE).length();
+                    bufferedReadNanos = Math.min(bufferedReadNanos, System.nanoTime() - start);
+                    assertEquals(FILE_BENCHMARK_BYTES, length);
+                }
+            }
+        }
+        assertEquals(sourceFile.length(), channelCopyFile.length());
+
+        LogUtils.onlyLogI(TAG, "copy MB/s: loop=" + toMegabytesPerSecond(loopCopyNanos)
+                + ", transferTo=" + toMegabytesPerSecond(channelCopyNanos)
+                + "; read MB/s: loop=" + toMegabytesPerSecond(loopReadNanos)
+                + ", buffered=" + toMegabytesPerSecond(bufferedReadNanos));
+        FileUtils.deleteOneFile(sourceFile);
+        FileUtils.deleteOneFile(loopCopyFile);
+        FileUtils.deleteOneFile(channelCopyFile);
+    }
+
+    private static long toMegabytesPerSecond(long nanos) {
+        return nanos == 0 ? 0 : (long) (FILE_BENCHMARK_BYTES / (nanos / 1e9) / (1024 * 1024));
+    }
+
+    /**
+     * 只包含 ASCII 字元 舊的讀取方式在 chunk 邊界不會產生亂碼 兩者結果才能比較
+     */
+    private static void writeRandomText(File file, int bytes) throws IOException {
+        byte[] chunk = new byte[64 * 1024];
+        Random random = new Random(0);
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = (byte) ('a' + random.nextInt(26));
+        }
+        OutputStream os = new FileOutputStream(file);
+        try {
+            for (int written = 0; written < bytes; written += chunk.length) {
+                os.write(chunk);
+            }
+        } finally {
+            os.close();
+        }
+    }
+
+    private static void copyWithByteArray(File sourceFile, File targetFile, int bufferSize) throws IOException {
+        InputStream input = new FileInputStream(sourceFile);
+        OutputStream output = new FileOutputStream(targetFile);
+        try {
+            byte[] buffer = new byte[bufferSize];
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) > 0) {
+                output.write(buffer, 0, bytesRead);
+            }
+        } finally {
+            input.close();
+            output.close();
+        }
+    }
+
+    private static String readWithByteArray(File sourceFile, int bufferSize) throws IOException {
+        InputStream input = new FileInputStream(sourceFile);
+        try {
+            byte[] bytes = new byte[bufferSize];
+            StringBuilder sb = new StringBuilder();
+            int len;
+            while ((len = input.read(bytes)) != -1) {
+                sb.append(new String(bytes, 0, len));
+            }
+            return sb.toString();
+        } finally {
+            input.close();
+        }
+    }
+
+    private long measureLogCallerNanos(int count) {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            LogUtils.i(TAG, "benchmark log " + i);
+        }
+        long elapsed = System.nanoTime() - start;
+        LogUtils.flushLog();
+        return elapsed / count;
+    }
+
+    private long measureConcurrentReads(Context context, String databaseName, JackyDBHelper.DBConfig dbConfig)
+            throws InterruptedException {
+        context.deleteDatabase(databaseName);
+        JackyDBHelper.release();
+        JackyDBHelper.prepare(context, databaseName, 1, dbConfig);
+        final SQLiteDatabase db = JackyDBHelper.getInstance().getWritableDatabase();
+        if (dbConfig.getSynchronous() != null) {
+            assertEquals(dbConfig.getSynchronous().ordinal(), JackyDBHelper.queryPragma(db, "synchronous"));
+        }
+        assertEquals(dbConfig.isWriteAheadLoggingEnabled(), db.isWriteAheadLoggingEnabled());
+        db.execSQL("CREATE TABLE Item (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, value INTEGER)");
+        insertRows(db, 1000);
+
+        final AtomicBoolean isRunning = new AtomicBoolean(true);
+        final AtomicLong readCount = new AtomicLong();
+        final CountDownLatch finished = new CountDownLatch(READER_COUNT + 1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (isRunning.get()) {
+                    insertRows(db, 50);
+                }
+                finished.countDown();
+            }
+        }).start();
+        for (int i = 0; i < READER_COUNT; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (isRunning.get()) {
+                        Cursor cursor = db.rawQuery("SELECT name, value FROM Item WHERE value > ? LIMIT 100",
+                                new String[]{"500"});
+                        while (cursor.moveToNext()) {
+                            cursor.getString(0);
+                        }
+                        cursor.close();
+                        readCount.incrementAndGet();
+                    }
+                    finished.countDown();
+                }
+            }).start();
+        }
+        Thread.sleep(DURATION_MS);
+        isRunning.set(false);
+        finished.await();
+        JackyDBHelper.release();
+        context.deleteDatabase(databaseName);
+        return readCount.get();
+    }
+
+    private static void insertRows(SQLiteDatabase db, int rowCount) {
+        SQLiteStatement statement = db.compileStatement("INSERT INTO Item (name, value) VALUES (?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < rowCount; i++) {
+                statement.bindString(1, "item" + i);
+                statement.bindLong(2, i);
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+    }
+}
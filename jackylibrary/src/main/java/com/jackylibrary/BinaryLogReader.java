@@ -0,0 +1,399 @@
+package com.jackylibrary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 讀取 LogUtils.LogFormat.BINARY 產生的 .jlog 檔案 (也可以直接讀取壓縮過的 .jlog.gz)
+ * 只使用 java 標準函式庫 可以直接在電腦上執行 將 log 轉成文字:
+ * java -cp classes.jar com.jackylibrary.BinaryLogReader 20200101_log.jlog [更多檔案...]
+ * <p>
+ * 檔案格式 (varint 為 LEB128 zigzag 代表先經過 zigzag 編碼):
+ * 每筆資料: 0xFF 類型(1 byte) body 長度(varint) body CRC32(4 bytes big-endian 範圍為類型到 body 結尾)
+ * 檔頭 body (類型 0x00): "JLOG" 版本(1 byte) 起始時間(zigzag varint 毫秒)
+ * tag 定義 body (類型 0x01): tagId(varint) UTF-8 內容
+ * log body (類型 0x02): 與前一筆的時間差(zigzag varint 毫秒) 等級(1 byte) tagId(varint) UTF-8 內容
+ * 同一個檔案可能有多個檔頭 (每次重新開啟檔案時寫入) 遇到檔頭時 tag 編號與時間基準都會重置
+ * 寫到一半被中斷的資料會因為長度或 CRC32 不符而被略過 body 的內容不會被當成檔頭或其他資料解讀
+ */
+public class BinaryLogReader implements Closeable {
+
+    public static final String FILE_EXTENSION = ".jlog";
+    static final byte[] MAGIC = {'J', 'L', 'O', 'G'};
+    static final int FORMAT_VERSION = 2;
+    //UTF-8 的內容不會出現 0xFF 重新同步時比較少誤判
+    static final int FRAME_MARK = 0xFF;
+    static final int TYPE_SESSION = 0x00;
+    static final int TYPE_TAG = 0x01;
+    static final int TYPE_LOG = 0x02;
+    //單筆 body 的上限 超過時 BinaryLogWriter 會截斷內容 也避免錯誤的長度讓重新同步時讀入過多資料
+    static final int MAX_BODY_LENGTH = 4 * 1024 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String[] LEVEL_NAMES = {"?", "V", "D", "I", "W", "E"};
+
+    private final InputStream in;
+    private final CRC32 crc32 = new CRC32();
+    private final ArrayList<String> tags = new ArrayList<>();
+    private long lastTimestamp;
+    private boolean isHeaderRead = false;
+    //目前這筆資料讀到的所有 bytes 驗證失敗時要退回重新同步
+    private byte[] recordBytes = new byte[256];
+    private int recordLength;
+    //重新同步時退回的 bytes 會比 in 優先讀取
+    private byte[] pendingBytes = new byte[0];
+    private int pendingPosition;
+    //這筆資料開始時 pendingBytes 的讀取位置
+    private int recordPendingStart;
+    //解析 body 的位置 範圍為 recordBytes 中的 body
+    private int bodyPosition;
+    private int bodyEnd;
+    private long skippedByteCount;
+
+    public BinaryLogReader(InputStream in) {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in);
+    }
+
+    /**
+     * 依副檔名開啟檔案 .gz 結尾時會自動解壓縮
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static BinaryLogReader open(File file) throws IOException {
+        InputStream is = new BufferedInputStream(new FileInputStream(file));
+        if (file.getName().endsWith(".gz")) {
+            is = new GZIPInputStream(is);
+        }
+        return new BinaryLogReader(is);
+    }
+
+    /**
+     * 讀取下一筆 log 讀到檔案結尾時回傳 null
+     * 寫入到一半被中斷的資料 (app 被中止 或磁碟空間不足) 會被略過:
+     * 長度或 CRC32 不符時從下一個 byte 重新尋找完整的資料 檔案最後一筆不完整時視為檔案結尾
+     * 略過資料後 到下一個檔頭之前的 log 因為 tag 與時間基準可能不正確 也會一併略過
+     * 略過的 bytes 數可以用 getSkippedByteCount() 取得
+     *
+     * @return
+     * @throws IOException 讀取失敗
+     */
+    public LogEntry read() throws IOException {
+        while (true) {
+            recordLength = 0;
+            recordPendingStart = pendingPosition;
+            int mark = nextByte();
+            if (mark == -1) {
+                return null;
+            }
+            appendRecordByte(mark);
+            int type;
+            try {
+                type = readFrame(mark);
+            } catch (EOFException e) {
+                //長度可能是錯的 後面接著的資料仍可能是完整的 一樣重新同步
+                resync();
+                continue;
+            } catch (InvalidRecordException e) {
+                resync();
+                continue;
+            }
+            try {
+                if (type == TYPE_SESSION) {
+                    readHeader();
+                } else if (!isHeaderRead) {
+                    //尚未讀到檔頭 或剛重新同步過
+                    skippedByteCount += recordLength;
+                } else if (type == TYPE_TAG) {
+                    int tagId = readVarInt();
+                    String tag = readString();
+                    while (tags.size() <= tagId) {
+                        tags.add(null);
+                    }
+                    tags.set(tagId, tag);
+                } else if (type == TYPE_LOG) {
+                    long delta = unZigZag(readVarLong());
+                    int level = readByte();
+                    int tagId = readVarInt();
+                    String message = readString();
+                    lastTimestamp += delta;
+                    String tag = tagId < tags.size() ? tags.get(tagId) : null;
+                    return new LogEntry(lastTimestamp, level, tag, message);
+                } else {
+                    //不認得的類型 略過這筆
+                    skippedByteCount += recordLength;
+                }
+            } catch (InvalidRecordException e) {
+                //CRC32 正確但內容無法解析 (例如不支援的版本) 略過這筆 直到下一個檔頭
+                skippedByteCount += recordLength;
+                isHeaderRead = false;
+            }
+        }
+    }
+
+    /**
+     * 因為截斷或格式錯誤而略過的 bytes 數
+     *
+     * @return
+     */
+    public long getSkippedByteCount() {
+        return skippedByteCount;
+    }
+
+    /**
+     * 格式錯誤 與讀取失敗的 IOException 區分 遇到時重新同步
+     */
+    private static class InvalidRecordException extends Exception {
+    }
+
+    /**
+     * 讀取一筆完整的資料並驗證 CRC32 驗證通過後 bodyPosition 與 bodyEnd 指向這筆的 body
+     *
+     * @param mark
+     * @return 類型
+     * @throws IOException
+     * @throws InvalidRecordException
+     */
+    private int readFrame(int mark) throws IOException, InvalidRecordException {
+        if (mark != FRAME_MARK) {
+            throw new InvalidRecordException();
+        }
+        int type = readStreamByte();
+        long length = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = readStreamByte();
+            length |= (long) (b & 0x7F) << shift;
+            if (length > MAX_BODY_LENGTH) {
+                throw new InvalidRecordException();
+            }
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        int bodyStart = recordLength;
+        readFully((int) length);
+        int crc = 0;
+        for (int i = 0; i < 4; i++) {
+            crc = (crc << 8) | readStreamByte();
+        }
+        crc32.reset();
+        crc32.update(recordBytes, 1, bodyStart + (int) length - 1);
+        if (crc != (int) crc32.getValue()) {
+            throw new InvalidRecordException();
+        }
+        bodyPosition = bodyStart;
+        bodyEnd = bodyStart + (int) length;
+        return type;
+    }
+
+    /**
+     * 這筆資料不完整或驗證失敗 只略過第一個 byte 其餘退回 從下一個 byte 重新尋找完整的資料
+     * 重新同步後要等到下一個檔頭才繼續輸出 log
+     */
+    private void resync() {
+        unread(1);
+        skippedByteCount++;
+        isHeaderRead = false;
+    }
+
+    /**
+     * 將這筆資料從 offset 開始的 bytes 退回 下次讀取時優先使用 這筆資料只保留 offset 之前的部分
+     *
+     * @param offset
+     */
+    private void unread(int offset) {
+        if (pendingPosition - recordPendingStart == recordLength) {
+            //這筆資料都是從 pendingBytes 讀到的 退回讀取位置即可 避免重新同步時每個 byte 都複製一次
+            pendingPosition = recordPendingStart + offset;
+            recordLength = offset;
+            return;
+        }
+        int pendingRemaining = pendingBytes.length - pendingPosition;
+        byte[] bytes = new byte[recordLength - offset + pendingRemaining];
+        System.arraycopy(recordBytes, offset, bytes, 0, recordLength - offset);
+        System.arraycopy(pendingBytes, pendingPosition, bytes, recordLength - offset, pendingRemaining);
+        pendingBytes = bytes;
+        pendingPosition = 0;
+        recordLength = offset;
+    }
+
+    private int nextByte() throws IOException {
+        if (pendingPosition < pendingBytes.length) {
+            return pendingBytes[pendingPosition++] & 0xFF;
+        }
+        return in.read();
+    }
+
+    private int readStreamByte() throws IOException {
+        int value = nextByte();
+        if (value == -1) {
+            throw new EOFException();
+        }
+        appendRecordByte(value);
+        return value;
+    }
+
+    private void appendRecordByte(int value) {
+        ensureRecordCapacity(recordLength + 1);
+        recordBytes[recordLength++] = (byte) value;
+    }
+
+    private void ensureRecordCapacity(int capacity) {
+        if (recordBytes.length < capacity) {
+            byte[] bytes = new byte[Math.max(capacity, recordBytes.length * 2)];
+            System.arraycopy(recordBytes, 0, bytes, 0, recordLength);
+            recordBytes = bytes;
+        }
+    }
+
+    /**
+     * 截斷的資料長度可能是錯的 因此依實際讀到的內容擴充陣列 不事先配置整個長度
+     *
+     * @param length
+     * @throws IOException
+     */
+    private void readFully(int length) throws IOException {
+        int start = recordLength;
+        while (recordLength - start < length) {
+            if (pendingPosition < pendingBytes.length) {
+                appendRecordByte(pendingBytes[pendingPosition++] & 0xFF);
+                continue;
+            }
+            ensureRecordCapacity(recordLength + Math.min(length - (recordLength - start), 8192));
+            int read = in.read(recordBytes, recordLength, Math.min(length - (recordLength - start),
+                    recordBytes.length - recordLength));
+            if (read == -1) {
+                throw new EOFException();
+            }
+            recordLength += read;
+        }
+    }
+
+    private void readHeader() throws InvalidRecordException {
+        for (byte magic : MAGIC) {
+            if (readByte() != (magic & 0xFF)) {
+                throw new InvalidRecordException();
+            }
+        }
+        if (readByte() != FORMAT_VERSION) {
+            throw new InvalidRecordException();
+        }
+        lastTimestamp = unZigZag(readVarLong());
+        tags.clear();
+        isHeaderRead = true;
+    }
+
+    private int readByte() throws InvalidRecordException {
+        if (bodyPosition >= bodyEnd) {
+            throw new InvalidRecordException();
+        }
+        return recordBytes[bodyPosition++] & 0xFF;
+    }
+
+    private long readVarLong() throws InvalidRecordException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new InvalidRecordException();
+    }
+
+    private int readVarInt() throws InvalidRecordException {
+        long value = readVarLong();
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new InvalidRecordException();
+        }
+        return (int) value;
+    }
+
+    /**
+     * body 剩下的部分即為內容
+     *
+     * @return
+     */
+    private String readString() {
+        String value = new String(recordBytes, bodyPosition, bodyEnd - bodyPosition, UTF_8);
+        bodyPosition = bodyEnd;
+        return value;
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * 將二進位 log 轉成文字 每筆一行: yyyy-MM-dd HH:mm:ss.SSS 等級 tag: 內容
+     * 回傳轉換的筆數
+     *
+     * @param reader
+     * @param out
+     * @return
+     * @throws IOException
+     */
+    public static int exportText(BinaryLogReader reader, Writer out) throws IOException {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        Date date = new Date();
+        int count = 0;
+        LogEntry record;
+        try {
+            while ((record = reader.read()) != null) {
+                date.setTime(record.getTimestamp());
+                int level = record.getLevel() < LEVEL_NAMES.length ? record.getLevel() : 0;
+                out.write(sdf.format(date));
+                out.write(' ');
+                out.write(LEVEL_NAMES[level]);
+                out.write(' ');
+                out.write(String.valueOf(record.getTag()));
+                out.write(": ");
+                out.write(String.valueOf(record.getMessage()));
+                out.write('\n');
+                count++;
+            }
+        } finally {
+            //讀取失敗時 已經轉換的部分仍要輸出
+            out.flush();
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: java com.jackylibrary.BinaryLogReader <file.jlog[.gz]>...");
+            System.exit(1);
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8));
+        for (String path : args) {
+            BinaryLogReader reader = open(new File(path));
+            try {
+                exportText(reader, out);
+            } finally {
+                reader.close();
+            }
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,130 @@
+package com.jackylibrary;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+import static com.jackylibrary.BinaryLogReader.FORMAT_VERSION;
+import static com.jackylibrary.BinaryLogReader.FRAME_MARK;
+import static com.jackylibrary.BinaryLogReader.MAGIC;
+import static com.jackylibrary.BinaryLogReader.MAX_BODY_LENGTH;
+import static com.jackylibrary.BinaryLogReader.TYPE_LOG;
+import static com.jackylibrary.BinaryLogReader.TYPE_SESSION;
+import static com.jackylibrary.BinaryLogReader.TYPE_TAG;
+
+/**
+ * 將 log 編碼成 BinaryLogReader 可以讀取的二進位格式 格式說明請參考 BinaryLogReader
+ * 每個實例代表檔案中的一段 第一次寫入時會先寫入檔頭 之後的時間都以前一筆為基準記錄差值
+ * 不是 thread safe 由 LogUtils.LogBuffer 在 lock 中使用
+ */
+class BinaryLogWriter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final HashMap<String, Integer> tagIds = new HashMap<>();
+    //每筆資料的內容先寫在這裡 才能在前面寫入長度 並計算 CRC32
+    private final BodyBuffer body = new BodyBuffer();
+    private final byte[] lengthBytes = new byte[5];
+    private final CRC32 crc32 = new CRC32();
+    private boolean isHeaderWritten = false;
+    private long lastTimestamp;
+
+    void writeRecord(ByteArrayOutputStream out, long timestamp, int level, String tag, String message) {
+        if (!isHeaderWritten) {
+            body.reset();
+            body.write(MAGIC, 0, MAGIC.length);
+            body.write(FORMAT_VERSION);
+            writeVarLong(body, zigZag(timestamp));
+            writeFrame(out, TYPE_SESSION);
+            lastTimestamp = timestamp;
+            isHeaderWritten = true;
+        }
+        Integer tagId = tagIds.get(tag);
+        if (tagId == null) {
+            tagId = tagIds.size();
+            tagIds.put(tag, tagId);
+            body.reset();
+            writeVarLong(body, tagId);
+            byte[] tagBytes = tag.getBytes(UTF_8);
+            body.write(tagBytes, 0, tagBytes.length);
+            writeFrame(out, TYPE_TAG);
+        }
+        body.reset();
+        //時間可能被使用者往回調 因此差值使用 zigzag 編碼
+        writeVarLong(body, zigZag(timestamp - lastTimestamp));
+        lastTimestamp = timestamp;
+        body.write(level);
+        writeVarLong(body, tagId);
+        byte[] messageBytes = message == null ? new byte[0] : message.getBytes(UTF_8);
+        if (body.size() + messageBytes.length > MAX_BODY_LENGTH) {
+            messageBytes = truncate(message, MAX_BODY_LENGTH - body.size()).getBytes(UTF_8);
+        }
+        body.write(messageBytes, 0, messageBytes.length);
+        writeFrame(out, TYPE_LOG);
+    }
+
+    /**
+     * 寫入 FRAME_MARK 類型 長度 body 的內容 以及涵蓋類型到 body 結尾的 CRC32
+     *
+     * @param out
+     * @param type
+     */
+    private void writeFrame(ByteArrayOutputStream out, int type) {
+        int lengthSize = 0;
+        long length = body.size();
+        while ((length & ~0x7FL) != 0) {
+            lengthBytes[lengthSize++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        lengthBytes[lengthSize++] = (byte) length;
+        crc32.reset();
+        crc32.update(type);
+        crc32.update(lengthBytes, 0, lengthSize);
+        crc32.update(body.getBuffer(), 0, body.size());
+        int crc = (int) crc32.getValue();
+        out.write(FRAME_MARK);
+        out.write(type);
+        out.write(lengthBytes, 0, lengthSize);
+        out.write(body.getBuffer(), 0, body.size());
+        out.write(crc >>> 24);
+        out.write(crc >>> 16);
+        out.write(crc >>> 8);
+        out.write(crc);
+    }
+
+    /**
+     * 超過單筆上限的內容只保留前面的部分 UTF-8 每個 char 最多 3 bytes (surrogate pair 為 2 個 char 4 bytes)
+     *
+     * @param message
+     * @param maxBytes
+     * @return
+     */
+    private static String truncate(String message, int maxBytes) {
+        int end = Math.min(message.length(), maxBytes / 3);
+        if (end > 0 && Character.isHighSurrogate(message.charAt(end - 1))) {
+            end--;
+        }
+        return message.substring(0, end);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * 直接取得內部陣列 避免每筆資料都複製一次
+     */
+    private static class BodyBuffer extends ByteArrayOutputStream {
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
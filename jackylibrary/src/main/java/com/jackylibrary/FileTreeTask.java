@@ -0,0 +1,377 @@
+package com.jackylibrary;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 以多條執行緒走訪整個目錄 刪除全部內容或計算佔用空間 由 FileUtils.deleteFilesInParallel() 與
+ * FileUtils.calculateDiskUsage() 取得 建立後立即在背景開始執行
+ * 每個目錄是一個工作 內容很多的目錄再切成每段 256 個的工作 由固定數量的執行緒處理
+ * 子目錄與每一段都完成後才處理 (刪除) 目錄本身
+ * 單一檔案失敗不會中止整個工作 只會計入 failedCount
+ * 指向目錄的符號連結視為一般檔案 不會走進連結的目標 刪除時只刪除連結本身
+ * 註: ForkJoinPool 在 Android 5.0 才加入 這邊使用 ThreadPoolExecutor 加上每個目錄的計數器達到相同的效果
+ */
+public class FileTreeTask {
+
+    private static final String TAG = FileTreeTask.class.getName();
+    private static final long PROGRESS_INTERVAL_NANOS = 200L * 1000 * 1000;
+    //單一目錄的內容超過此數量時 分段交給多條執行緒處理
+    private static final int CHILDREN_CHUNK_SIZE = 256;
+    public static final int DEFAULT_PARALLELISM = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static Handler mainHandler;
+
+    private final File root;
+    private final boolean isDelete;
+    private final onFileTreeListener listener;
+    private final ThreadPoolExecutor executor;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final AtomicLong fileCount = new AtomicLong();
+    private final AtomicLong directoryCount = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong lastProgressNanos = new AtomicLong(System.nanoTime());
+    private volatile boolean isCancelled = false;
+    private volatile Result result;
+
+    /**
+     * 回呼都在主執行緒執行 onProgress() 最多每 200ms 一次
+     */
+    public interface onFileTreeListener {
+        void onProgress(long processedFileCount, long processedBytes);
+
+        void onFinished(Result result);
+    }
+
+    public static class Result {
+        private final long fileCount;
+        private final long directoryCount;
+        private final long totalBytes;
+        private final long failedCount;
+        private final boolean isCancelled;
+
+        private Result(long fileCount, long directoryCount, long totalBytes, long failedCount, boolean isCancelled) {
+            this.fileCount = fileCount;
+            this.directoryCount = directoryCount;
+            this.totalBytes = totalBytes;
+            this.failedCount = failedCount;
+            this.isCancelled = isCancelled;
+        }
+
+        /**
+         * 刪除時為成功刪除的檔案數 計算空間時為走訪到的檔案數
+         *
+         * @return
+         */
+        public long getFileCount() {
+            return fileCount;
+        }
+
+        public long getDirectoryCount() {
+            return directoryCount;
+        }
+
+        /**
+         * 刪除時為釋放的空間 計算空間時為所有檔案的大小總和
+         *
+         * @return
+         */
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        public long getFailedCount() {
+            return failedCount;
+        }
+
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+
+        public boolean isSuccessful() {
+            return failedCount == 0 && !isCancelled;
+        }
+    }
+
+    /**
+     * 記錄一個目錄還有多少工作沒完成 (自己的檔案 + 每一段內容 + 每個子目錄) 歸零時代表整個子樹都處理完了
+     */
+    private static class DirectoryNode {
+        private final File directory;
+        private final DirectoryNode parent;
+        private final AtomicInteger pendingCount = new AtomicInteger(1);
+
+        private DirectoryNode(File directory, DirectoryNode parent) {
+            this.directory = directory;
+            this.parent = parent;
+        }
+    }
+
+    static FileTreeTask start(File root, boolean isDelete, int parallelism, onFileTreeListener listener) {
+        FileTreeTask task = new FileTreeTask(root, isDelete, parallelism > 0 ? parallelism : DEFAULT_PARALLELISM, listener);
+        task.submit(root, null);
+        return task;
+    }
+
+    private FileTreeTask(File root, boolean isDelete, int parallelism, onFileTreeListener listener) {
+        this.root = root;
+        this.isDelete = isDelete;
+        this.listener = listener;
+        final String threadName = isDelete ? "FileUtils-delete" : "FileUtils-usage";
+        executor = new ThreadPoolExecutor(parallelism, parallelism, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 要求停止 已經在處理中的檔案會處理完 其餘的目錄不再走訪 onFinished() 仍會被呼叫
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    public boolean isDone() {
+        return result != null;
+    }
+
+    /**
+     * 等待工作完成並回傳結果 不可在主執行緒呼叫 否則 onFinished() 要等到返回後才會執行
+     *
+     * @return
+     * @throws InterruptedException
+     */
+    public Result await() throws InterruptedException {
+        finished.await();
+        return result;
+    }
+
+    public long getProcessedFileCount() {
+        return fileCount.get();
+    }
+
+    public long getProcessedBytes() {
+        return totalBytes.get();
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    private void submit(final File file, final DirectoryNode parent) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (parent == null && !isRealDirectory(file)) {
+                    //根目錄本身就是檔案
+                    processFile(file, file.isDirectory());
+                    finish();
+                    return;
+                }
+                processDirectory(new DirectoryNode(file, parent));
+            }
+        });
+    }
+
+    private void processDirectory(DirectoryNode node) {
+        try {
+            if (isCancelled) {
+                return;
+            }
+            File[] children = node.directory.listFiles();
+            if (children == null) {
+                //沒有權限或目錄在走訪中被刪除
+                failedCount.incrementAndGet();
+                LogUtils.onlyLogW(TAG, "processDirectory() failed: listFiles() returned null, directoryPath: "
+                        + node.directory.getAbsolutePath());
+                return;
+            }
+            //檔案很多的目錄 (例如數萬個檔案的快取目錄) 切成多段交給其他執行緒 最後一段由目前的執行緒處理
+            int lastChunkStart = (children.length - 1) / CHILDREN_CHUNK_SIZE * CHILDREN_CHUNK_SIZE;
+            for (int from = 0; from < lastChunkStart && !isCancelled; from += CHILDREN_CHUNK_SIZE) {
+                node.pendingCount.incrementAndGet();
+                submitChildren(node, children, from, from + CHILDREN_CHUNK_SIZE);
+            }
+            processChildren(node, children, lastChunkStart, children.length);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            failedCount.incrementAndGet();
+            LogUtils.onlyLogW(TAG, "processDirectory() failed: " + e.getMessage() + ", directoryPath: "
+                    + node.directory.getAbsolutePath());
+        } finally {
+            completeOne(node);
+        }
+    }
+
+    /**
+     * 處理目錄中的一段內容 與目錄本身共用同一個計數器 完成時呼叫 completeOne()
+     *
+     * @param node
+     * @param children
+     * @param from
+     * @param to
+     */
+    private void submitChildren(final DirectoryNode node, final File[] children, final int from, final int to) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    processChildren(node, children, from, to);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    failedCount.incrementAndGet();
+                    LogUtils.onlyLogW(TAG, "submitChildren() failed: " + e.getMessage() + ", directoryPath: "
+                            + node.directory.getAbsolutePath());
+                } finally {
+                    completeOne(node);
+                }
+            }
+        });
+    }
+
+    private void processChildren(DirectoryNode node, File[] children, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (isCancelled) {
+                return;
+            }
+            File child = children[i];
+            boolean isDirectory = child.isDirectory();
+            if (isDirectory && isRealDirectory(child)) {
+                node.pendingCount.incrementAndGet();
+                submit(child, node);
+            } else {
+                processFile(child, isDirectory);
+            }
+        }
+    }
+
+    /**
+     * @param file
+     * @param isDirectoryLink 指向目錄的符號連結 length() 會回傳目錄本身的大小 不計入
+     */
+    private void processFile(File file, boolean isDirectoryLink) {
+        try {
+            long length = isDirectoryLink ? 0 : file.length();
+            if (isDelete && !file.delete()) {
+                failedCount.incrementAndGet();
+                LogUtils.onlyLogW(TAG, "processFile() failed: file can not be deleted, filePath: "
+                        + file.getAbsolutePath());
+                return;
+            }
+            fileCount.incrementAndGet();
+            totalBytes.addAndGet(length);
+            reportProgress();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            failedCount.incrementAndGet();
+            LogUtils.onlyLogW(TAG, "processFile() failed: " + e.getMessage() + ", filePath: " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * 目錄的計數器歸零時 代表底下的內容都處理完了 此時才刪除目錄本身 並通知上一層
+     *
+     * @param node
+     */
+    private void completeOne(DirectoryNode node) {
+        while (node != null && node.pendingCount.decrementAndGet() == 0) {
+            if (!isCancelled) {
+                if (isDelete && !node.directory.delete()) {
+                    failedCount.incrementAndGet();
+                    LogUtils.onlyLogW(TAG, "completeOne() failed: directory can not be deleted, directoryPath: "
+                            + node.directory.getAbsolutePath());
+                } else {
+                    directoryCount.incrementAndGet();
+                }
+            }
+            if (node.parent == null) {
+                finish();
+            }
+            node = node.parent;
+        }
+    }
+
+    private void reportProgress() {
+        if (listener == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        long last = lastProgressNanos.get();
+        if (now - last < PROGRESS_INTERVAL_NANOS || !lastProgressNanos.compareAndSet(last, now)) {
+            return;
+        }
+        final long processedFileCount = fileCount.get();
+        final long processedBytes = totalBytes.get();
+        getMainHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onProgress(processedFileCount, processedBytes);
+            }
+        });
+    }
+
+    private void finish() {
+        final Result finalResult = new Result(fileCount.get(), directoryCount.get(), totalBytes.get(),
+                failedCount.get(), isCancelled);
+        result = finalResult;
+        finished.countDown();
+        executor.shutdown();
+        if (listener == null) {
+            return;
+        }
+        getMainHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onFinished(finalResult);
+            }
+        });
+    }
+
+    /**
+     * 判斷是否為真正的目錄 (不是指向目錄的符號連結)
+     * 比較父目錄正規化後的路徑 與檔案本身正規化後的路徑 不同時代表檔案本身是連結
+     *
+     * @param file
+     * @return
+     */
+    private static boolean isRealDirectory(File file) {
+        if (!file.isDirectory()) {
+            return false;
+        }
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            File fileInCanonicalParent = parent == null ? file.getAbsoluteFile()
+                    : new File(parent.getCanonicalFile(), file.getName());
+            return fileInCanonicalParent.getCanonicalFile().equals(fileInCanonicalParent.getAbsoluteFile());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static synchronized Handler getMainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+}
@@ -1,18 +1,36 @@
 package com.jackylibrary;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.os.Build;
 import android.os.Environment;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashSet;
 
 public class FileUtils {
     private static final String TAG = FileUtils.class.getName();
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final String TEMP_FILE_POSTFIX = ".tmp";
+    private static final int TEXT_CHUNK_SIZE = 8 * 1024;
 
     public enum DirKind {
         // 不用宣告存取權限
@@ -93,6 +111,39 @@ public class FileUtils {
         return null;
     }
 
+    /**
+     * 寫入檔案的方式
+     * OVERWRITE: 直接清空目標檔案後寫入 寫到一半中斷時會留下不完整的檔案
+     * ATOMIC: 先寫到同一個目錄的暫存檔並 fsync 再改名覆蓋目標檔案 中斷時目標檔案仍是完整的舊內容或新內容
+     * APPEND: 寫在目標檔案原本的內容後面 檔案不存在時會建立
+     */
+    public enum WriteMode {
+        OVERWRITE,
+        ATOMIC,
+        APPEND
+    }
+
+    /**
+     * 分段產生 byte 內容 writeTo() 中可以多次寫入 不需要也不應該關閉 os
+     */
+    public interface StreamContent {
+        void writeTo(OutputStream os) throws IOException;
+    }
+
+    /**
+     * 分段產生文字內容 writeTo() 中可以多次寫入 不需要也不應該關閉 writer
+     */
+    public interface TextContent {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    /**
+     * 內部統一的寫入介面 直接拿到 FileOutputStream 才能使用 FileChannel 寫入 ByteBuffer
+     */
+    private interface FileContent {
+        void writeTo(FileOutputStream fos) throws IOException;
+    }
+
     /**
      * 這邊為了安全起見 嚴格限制外面傳進來的格式 一定要包含目錄跟檔名 這邊函數內部要做一些防呆處理
      * 回傳 true 當整個寫檔過程完全順利結束
@@ -102,14 +153,217 @@ public class FileUtils {
      * @param content   待寫入的內容
      */
     public static boolean writeFile(File directory, String fileName, String content) {
+        return writeFile(directory, fileName, content, WriteMode.OVERWRITE);
+    }
+
+    /**
+     * 與 writeFile(directory, fileName, content) 相同 但可以指定寫入方式
+     * ATOMIC 會在改名後 fsync 目錄 確保改名本身也寫入磁碟 (Android 5.0 以上)
+     * 一次寫入多個小檔案時 可以改用 AtomicWriteBatch 讓同一個目錄只需要 fsync 一次
+     *
+     * @param directory
+     * @param fileName
+     * @param content
+     * @param mode
+     * @return
+     */
+    public static boolean writeFile(File directory, String fileName, String content, WriteMode mode) {
+        return writeFile(directory, fileName, toFileContent(content), mode);
+    }
+
+    /**
+     * 以指定的編碼分段寫入文字 不會像 content.getBytes() 一樣先在 heap 產生一份完整的 byte[]
+     * 適合很大的 StringBuilder
+     *
+     * @param directory
+     * @param fileName
+     * @param content
+     * @param charset   null 時使用系統預設 (Android 為 UTF-8)
+     * @param mode
+     * @return
+     */
+    public static boolean writeFile(File directory, String fileName, final CharSequence content, Charset charset,
+                                    WriteMode mode) {
+        return writeFile(directory, fileName, new TextContent() {
+            @Override
+            public void writeTo(Writer writer) throws IOException {
+                int length = content.length();
+                for (int start = 0; start < length; start += TEXT_CHUNK_SIZE) {
+                    writer.append(content, start, Math.min(start + TEXT_CHUNK_SIZE, length));
+                }
+            }
+        }, charset, mode);
+    }
+
+    /**
+     * 寫入 ByteBuffer 從 position 寫到 limit 不會改變 content 的 position
+     * direct buffer 或 MappedByteBuffer 的內容不需要先複製到 byte[]
+     *
+     * @param directory
+     * @param fileName
+     * @param content
+     * @param mode
+     * @return
+     */
+    public static boolean writeFile(File directory, String fileName, final ByteBuffer content, WriteMode mode) {
+        return writeFile(directory, fileName, new FileContent() {
+            @Override
+            public void writeTo(FileOutputStream fos) throws IOException {
+                ByteBuffer source = content.duplicate();
+                FileChannel channel = fos.getChannel();
+                while (source.hasRemaining()) {
+                    channel.write(source);
+                }
+            }
+        }, mode);
+    }
+
+    /**
+     * 由 content 分段寫入 byte 資料 寫入時已經有 DEFAULT_BUFFER_SIZE 的緩衝 不需要再包一層
+     *
+     * @param directory
+     * @param fileName
+     * @param content
+     * @param mode
+     * @return
+     */
+    public static boolean writeFile(File directory, String fileName, final StreamContent content, WriteMode mode) {
+        return writeFile(directory, fileName, new FileContent() {
+            @Override
+            public void writeTo(FileOutputStream fos) throws IOException {
+                BufferedOutputStream bos = new BufferedOutputStream(fos, DEFAULT_BUFFER_SIZE);
+                content.writeTo(bos);
+                bos.flush();
+            }
+        }, mode);
+    }
+
+    /**
+     * 由 content 分段寫入文字 以指定的編碼邊寫邊轉換
+     *
+     * @param directory
+     * @param fileName
+     * @param content
+     * @param charset   null 時使用系統預設 (Android 為 UTF-8)
+     * @param mode
+     * @return
+     */
+    public static boolean writeFile(File directory, String fileName, final TextContent content, Charset charset,
+                                    WriteMode mode) {
+        final Charset targetCharset = charset != null ? charset : Charset.defaultCharset();
+        return writeFile(directory, fileName, new FileContent() {
+            @Override
+            public void writeTo(FileOutputStream fos) throws IOException {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(fos, targetCharset), TEXT_CHUNK_SIZE);
+                content.writeTo(writer);
+                writer.flush();
+            }
+        }, mode);
+    }
+
+    private static boolean writeFile(File directory, String fileName, FileContent content, WriteMode mode) {
+        File targetFile = getWritableFile(directory, fileName);
+        if (targetFile == null) {
+            return false;
+        }
+        if (mode == WriteMode.ATOMIC) {
+            return writeFileAtomically(targetFile, content) && syncDirectory(directory);
+        }
         boolean isSuccessful = false;
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(targetFile, mode == WriteMode.APPEND);
+            content.writeTo(fos);
+            fos.flush();
+            isSuccessful = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (fos != null) {
+                try {
+                    fos.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    isSuccessful = false;
+                }
+            }
+        }
+        return isSuccessful;
+    }
+
+    private static FileContent toFileContent(final String content) {
+        return new FileContent() {
+            @Override
+            public void writeTo(FileOutputStream fos) throws IOException {
+                fos.write(content.getBytes());
+            }
+        };
+    }
+
+    /**
+     * 一次以 ATOMIC 方式寫入多個檔案 每個檔案各自 fsync 後改名 最後 commit() 時每個目錄只 fsync 一次
+     * commit() 之前檔案已經可以讀到新的內容 但系統崩潰或斷電後改名不保證被保留
+     * 例如:
+     * FileUtils.AtomicWriteBatch batch = new FileUtils.AtomicWriteBatch();
+     * batch.writeFile(directory, "a.json", a);
+     * batch.writeFile(directory, "b.json", b);
+     * boolean isSuccessful = batch.commit();
+     */
+    public static class AtomicWriteBatch {
+        private final HashSet<File> directories = new HashSet<>();
+        private boolean isSuccessful = true;
+
+        /**
+         * 回傳這個檔案是否寫入成功 失敗時 commit() 也會回傳 false
+         *
+         * @param directory
+         * @param fileName
+         * @param content
+         * @return
+         */
+        public synchronized boolean writeFile(File directory, String fileName, String content) {
+            File targetFile = getWritableFile(directory, fileName);
+            if (targetFile == null || !writeFileAtomically(targetFile, toFileContent(content))) {
+                isSuccessful = false;
+                return false;
+            }
+            directories.add(directory);
+            return true;
+        }
+
+        /**
+         * fsync 所有寫入過的目錄 回傳全部的檔案與目錄是否都成功 之後可以繼續使用同一個 batch
+         *
+         * @return
+         */
+        public synchronized boolean commit() {
+            boolean result = isSuccessful;
+            for (File directory : directories) {
+                if (!syncDirectory(directory)) {
+                    result = false;
+                }
+            }
+            directories.clear();
+            isSuccessful = true;
+            return result;
+        }
+    }
+
+    /**
+     * 檢查目錄與檔名 必要時建立目錄 回傳要寫入的檔案 失敗時回傳 null
+     *
+     * @param directory
+     * @param fileName
+     * @return
+     */
+    private static File getWritableFile(File directory, String fileName) {
         if (directory == null) {
             LogUtils.onlyLogW(TAG, "writeFile() failed: directory is null");
-            return false;
+            return null;
         }
         if (StringUtils.isNullOrEmpty(fileName)) {
             LogUtils.onlyLogW(TAG, "writeFile() failed: fileName is empty");
-            return false;
+            return null;
         }
         if (!directory.isDirectory()) {
             //先試著把前面的父目錄全部建起來
@@ -117,32 +371,108 @@ public class FileUtils {
                 //建立的過程有可能會失敗，但注意，有可能前面一部分已經成功建起來，後面部分失敗。
                 LogUtils.onlyLogW(TAG, "writeFile() failed: directory can not be created, directoryPath: "
                         + directory.getAbsolutePath());
-                return false;
+                return null;
             }
         }
-        File targetFile = new File(directory, fileName);
+        return new File(directory, fileName);
+    }
+
+    /**
+     * 暫存檔與目標檔案在同一個目錄 改名才會是 atomic 的 fsync 之後才改名 避免崩潰後留下空的目標檔案
+     *
+     * @param targetFile
+     * @param content
+     * @return
+     */
+    private static boolean writeFileAtomically(File targetFile, FileContent content) {
+        File tempFile = null;
         FileOutputStream fos = null;
+        boolean isSuccessful = false;
         try {
-            fos = new FileOutputStream(targetFile);
-            fos.write(content.getBytes());
+            tempFile = File.createTempFile("." + targetFile.getName() + "_", TEMP_FILE_POSTFIX, targetFile.getParentFile());
+            fos = new FileOutputStream(tempFile);
+            content.writeTo(fos);
             fos.flush();
-            isSuccessful = true;
+            fos.getFD().sync();
+            fos.close();
+            fos = null;
+            isSuccessful = tempFile.renameTo(targetFile);
+            if (!isSuccessful) {
+                LogUtils.onlyLogW(TAG, "writeFile() failed: temp file can not be renamed, filePath: "
+                        + targetFile.getAbsolutePath());
+            }
         } catch (IOException e) {
             e.printStackTrace();
+            LogUtils.onlyLogW(TAG, "writeFile() failed: " + e.getMessage() + ", filePath: "
+                    + targetFile.getAbsolutePath());
         } finally {
             if (fos != null) {
                 try {
                     fos.close();
                 } catch (IOException e) {
                     e.printStackTrace();
-                    isSuccessful = false;
                 }
             }
+            if (!isSuccessful && tempFile != null && tempFile.exists() && !tempFile.delete()) {
+                LogUtils.onlyLogW(TAG, "writeFile() failed: temp file can not be deleted, filePath: "
+                        + tempFile.getAbsolutePath());
+            }
         }
         return isSuccessful;
     }
 
+    /**
+     * fsync 目錄 讓改名寫入磁碟 android.system.Os 在 Android 5.0 才加入 較舊的版本直接回傳 true
+     *
+     * @param directory
+     * @return
+     */
+    private static boolean syncDirectory(File directory) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return true;
+        }
+        return DirectorySyncer.sync(directory);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static class DirectorySyncer {
+        private static boolean sync(File directory) {
+            FileDescriptor fd = null;
+            try {
+                fd = Os.open(directory.getAbsolutePath(), OsConstants.O_RDONLY, 0);
+                Os.fsync(fd);
+                return true;
+            } catch (ErrnoException e) {
+                e.printStackTrace();
+                LogUtils.onlyLogW(TAG, "syncDirectory() failed: " + e.getMessage() + ", directoryPath: "
+                        + directory.getAbsolutePath());
+                return false;
+            } finally {
+                if (fd != null) {
+                    try {
+                        Os.close(fd);
+                    } catch (ErrnoException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
     public static String readFile(File sourceFile) {
+        return readFile(sourceFile, Charset.defaultCharset(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * 以指定的編碼讀取整個檔案 Reader 會保留被切在兩次讀取之間的多 byte 字元 不會產生亂碼
+     * 讀取失敗時回傳空字串
+     *
+     * @param sourceFile
+     * @param charset    null 時使用系統預設 (Android 為 UTF-8)
+     * @param bufferSize 每次讀取的字元數 <= 0 時使用 DEFAULT_BUFFER_SIZE
+     * @return
+     */
+    public static String readFile(File sourceFile, Charset charset, int bufferSize) {
         String result = "";
         if (sourceFile == null) {
             LogUtils.onlyLogW(TAG, "readFile() failed: sourceFile is null");
@@ -153,22 +483,30 @@ public class FileUtils {
                     + sourceFile.getAbsolutePath());
             return "";
         }
-        FileInputStream fis = null;
+        if (charset == null) {
+            charset = Charset.defaultCharset();
+        }
+        if (bufferSize <= 0) {
+            bufferSize = DEFAULT_BUFFER_SIZE;
+        }
+        Reader reader = null;
         try {
-            fis = new FileInputStream(sourceFile);
-            byte[] bytes = new byte[1024];
-            StringBuilder sb = new StringBuilder();
+            reader = new InputStreamReader(new FileInputStream(sourceFile), charset);
+            char[] buffer = new char[bufferSize];
+            //字元數不會超過 byte 數 先配置好避免 StringBuilder 反覆擴充
+            long fileLength = sourceFile.length();
+            StringBuilder sb = new StringBuilder((int) Math.min(Math.max(fileLength, 16), Integer.MAX_VALUE - 8));
             int len;
-            while ((len = fis.read(bytes)) != -1) {
-                sb.append(new String(bytes, 0, len));
+            while ((len = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, len);
             }
             result = sb.toString();
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
-            if (fis != null) {
+            if (reader != null) {
                 try {
-                    fis.close();
+                    reader.close();
                 } catch (IOException e) {
                     e.printStackTrace();
                     result = "";
@@ -178,10 +516,38 @@ public class FileUtils {
         return result;
     }
 
+    /**
+     * 以 mmap 唯讀開啟檔案 內容不會被讀進 java heap 適合掃描很大的檔案
+     * 用完必須呼叫 close() 失敗時回傳 null
+     *
+     * @param sourceFile
+     * @return
+     */
+    public static MappedFileReader mapFile(File sourceFile) {
+        if (sourceFile == null) {
+            LogUtils.onlyLogW(TAG, "mapFile() failed: sourceFile is null");
+            return null;
+        }
+        if (!sourceFile.canRead()) {
+            LogUtils.onlyLogW(TAG, "mapFile() failed: sourceFile can not be read, filePath: "
+                    + sourceFile.getAbsolutePath());
+            return null;
+        }
+        try {
+            return MappedFileReader.open(sourceFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+            LogUtils.onlyLogW(TAG, "mapFile() failed: " + e.getMessage() + ", filePath: "
+                    + sourceFile.getAbsolutePath());
+            return null;
+        }
+    }
+
     /**
      * 這個複製檔案的方法並不回傳布林值 因為無法單從回傳值判定到底有無順利複製
      * 所以要注意 log 如果讀檔 或寫檔過程有發生任何意外 應該都會留下 log
      * 如果有產生檔案 但打開裡面都是空的 那有可能是讀檔失敗 所以回傳空字串
+     * 使用 FileChannel.transferTo() 複製 資料不需要經過 java 的 byte[] 大檔案也只需要少量的系統呼叫
      *
      * @param sourceFile
      * @param targetDirectory
@@ -189,15 +555,22 @@ public class FileUtils {
      */
     public static void copyFile(File sourceFile, File targetDirectory, String targetFileName) {
         File targetFile = new File(targetDirectory, targetFileName);
-        InputStream input = null;
-        OutputStream output = null;
+        FileInputStream input = null;
+        FileOutputStream output = null;
         try {
             input = new FileInputStream(sourceFile);
             output = new FileOutputStream(targetFile);
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = input.read(buffer)) > 0) {
-                output.write(buffer, 0, bytesRead);
+            FileChannel sourceChannel = input.getChannel();
+            FileChannel targetChannel = output.getChannel();
+            long size = sourceChannel.size();
+            long position = 0;
+            //transferTo() 一次不一定會傳完 要依回傳值繼續 檔案在複製中被截短時回傳 0 避免無窮迴圈
+            while (position < size) {
+                long transferred = sourceChannel.transferTo(position, size - position, targetChannel);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
             }
         } catch (FileNotFoundException e) {
             LogUtils.w(TAG, "copyFile() failed: file can not be found, sourcePath: "
@@ -270,6 +643,11 @@ public class FileUtils {
             return deleteOneFile(targetFile);
         } else {
             File[] files = targetFile.listFiles();
+            if (files == null) {
+                LogUtils.w(TAG, "deleteFilesRecursively() failed: " +
+                        "targetDirectory can not be listed, directoryPath: " + targetFile.getAbsolutePath());
+                return false;
+            }
             for (File file : files) {
                 if (!deleteFilesRecursively(file)) {
                     return false;
@@ -285,6 +663,53 @@ public class FileUtils {
         }
     }
 
+    /**
+     * 以多條執行緒刪除目標 (目錄時包含底下的所有內容) 立即返回 可以用回傳的 FileTreeTask 取消或等待結果
+     * 與 deleteFilesRecursively() 不同 單一檔案刪除失敗時會繼續刪除其他檔案 適合清除大量檔案的快取目錄
+     * 失敗時回傳 null
+     *
+     * @param targetFile
+     * @param parallelism 同時使用的執行緒數 <= 0 時使用 FileTreeTask.DEFAULT_PARALLELISM
+     * @param listener    可以為 null 在主執行緒回報進度與結果
+     * @return
+     */
+    public static FileTreeTask deleteFilesInParallel(File targetFile, int parallelism,
+                                                     FileTreeTask.onFileTreeListener listener) {
+        if (targetFile == null) {
+            LogUtils.w(TAG, "deleteFilesInParallel() failed: targetFile is null");
+            return null;
+        }
+        if (!targetFile.exists()) {
+            LogUtils.w(TAG, "deleteFilesInParallel() failed: targetFile does not exist, filePath: "
+                    + targetFile.getAbsolutePath());
+            return null;
+        }
+        return FileTreeTask.start(targetFile, true, parallelism, listener);
+    }
+
+    /**
+     * 以多條執行緒計算目標 (目錄時包含底下的所有內容) 的檔案數與大小總和 立即返回
+     * 結果由 listener.onFinished() 或 FileTreeTask.await() 取得 失敗時回傳 null
+     *
+     * @param targetFile
+     * @param parallelism 同時使用的執行緒數 <= 0 時使用 FileTreeTask.DEFAULT_PARALLELISM
+     * @param listener    可以為 null 在主執行緒回報進度與結果
+     * @return
+     */
+    public static FileTreeTask calculateDiskUsage(File targetFile, int parallelism,
+                                                  FileTreeTask.onFileTreeListener listener) {
+        if (targetFile == null) {
+            LogUtils.w(TAG, "calculateDiskUsage() failed: targetFile is null");
+            return null;
+        }
+        if (!targetFile.exists()) {
+            LogUtils.w(TAG, "calculateDiskUsage() failed: targetFile does not exist, filePath: "
+                    + targetFile.getAbsolutePath());
+            return null;
+        }
+        return FileTreeTask.start(targetFile, false, parallelism, listener);
+    }
+
     /**
      * 檢查外部空間是否可被寫入
      * 注意 就算這邊回傳 true 只是代表外部空間狀態正常可以被寫入 但你想要寫入非自己package下的資料的話 還是需要請求權限
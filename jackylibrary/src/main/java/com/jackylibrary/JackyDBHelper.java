@@ -2,6 +2,7 @@ package com.jackylibrary;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
@@ -87,8 +88,134 @@ public class JackyDBHelper extends SQLiteOpenHelper {
         }
     }
 
-    private static HashMap<Class<? extends JackyDao>, JackyDao> daoMap = new HashMap<>();
+    public enum Synchronous {
+        OFF,
+        NORMAL,
+        FULL
+    }
+
+    /**
+     * prepare() 時可傳入的資料庫設定 沒有設定的項目會維持 SQLite 的預設值
+     * 例如: new JackyDBHelper.DBConfig().setWriteAheadLoggingEnabled(true).setSynchronous(Synchronous.NORMAL)
+     * 開啟 WAL 後 讀取不會再被寫入卡住 系統也會配置多條連線給讀取使用 通常建議搭配 Synchronous.NORMAL
+     * Android 沒有提供設定連線池大小的公開 API (開啟 WAL 時由系統決定)
+     * 因此 setReaderThreadCount() 設定的是 JackyAsyncDao 同時進行查詢的執行緒數量
+     */
+    public static class DBConfig {
+        public static final int UNSET = -1;
+        private boolean isWriteAheadLoggingEnabled = false;
+        private int readerThreadCount = UNSET;
+        private Synchronous synchronous;
+        private int pageSize = UNSET;
+        private int cacheSize;
+        private boolean isCacheSizeSet = false;
+        private long mmapSize = UNSET;
+        private int maxSqlCacheSize = UNSET;
+
+        public DBConfig setWriteAheadLoggingEnabled(boolean isWriteAheadLoggingEnabled) {
+            this.isWriteAheadLoggingEnabled = isWriteAheadLoggingEnabled;
+            return this;
+        }
+
+        /**
+         * JackyAsyncDao 用來查詢的執行緒數量 需要開啟 WAL 才有意義
+         *
+         * @param readerThreadCount
+         * @return
+         */
+        public DBConfig setReaderThreadCount(int readerThreadCount) {
+            this.readerThreadCount = readerThreadCount;
+            return this;
+        }
+
+        /**
+         * PRAGMA synchronous
+         *
+         * @param synchronous
+         * @return
+         */
+        public DBConfig setSynchronous(Synchronous synchronous) {
+            this.synchronous = synchronous;
+            return this;
+        }
+
+        /**
+         * PRAGMA page_size 單位為 byte 必須是 512 ~ 65536 之間的 2 的次方
+         * 只對新建立且未開啟 WAL 的資料庫有效 (WAL 模式下 SQLite 不允許修改 page_size)
+         *
+         * @param pageSize
+         * @return
+         */
+        public DBConfig setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * PRAGMA cache_size 正數代表頁數 負數代表 KB (例如 -2000 代表約 2MB)
+         *
+         * @param cacheSize
+         * @return
+         */
+        public DBConfig setCacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+            this.isCacheSizeSet = true;
+            return this;
+        }
+
+        /**
+         * PRAGMA mmap_size 單位為 byte 0 代表不使用 mmap
+         *
+         * @param mmapSize
+         * @return
+         */
+        public DBConfig setMmapSize(long mmapSize) {
+            this.mmapSize = mmapSize;
+            return this;
+        }
+
+        /**
+         * 每條連線快取的 prepared statement 數量 最大為 100
+         *
+         * @param maxSqlCacheSize
+         * @return
+         */
+        public DBConfig setMaxSqlCacheSize(int maxSqlCacheSize) {
+            this.maxSqlCacheSize = maxSqlCacheSize;
+            return this;
+        }
 
+        public boolean isWriteAheadLoggingEnabled() {
+            return isWriteAheadLoggingEnabled;
+        }
+
+        public int getReaderThreadCount() {
+            return readerThreadCount;
+        }
+
+        public Synchronous getSynchronous() {
+            return synchronous;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public int getCacheSize() {
+            return cacheSize;
+        }
+
+        public long getMmapSize() {
+            return mmapSize;
+        }
+
+        public int getMaxSqlCacheSize() {
+            return maxSqlCacheSize;
+        }
+    }
+
+    private static HashMap<Class<? extends JackyDao>, JackyDao> daoMap = new HashMap<>();
+    private DBConfig dbConfig;
 
     /**
      * getInstance() 呼叫前 一定要先呼叫 prepare() 並把你的 context 資料庫 databaseName 還有資料庫版本 version 都帶進來
@@ -101,6 +228,19 @@ public class JackyDBHelper extends SQLiteOpenHelper {
      * @param version
      */
     public static void prepare(Context context, String databaseName, int version) {
+        prepare(context, databaseName, version, null);
+    }
+
+    /**
+     * 與 prepare(Context, String, int) 相同 另外可以傳入 DBConfig 設定 WAL 與各項 PRAGMA
+     * dbConfig 為 null 時使用預設值
+     *
+     * @param context
+     * @param databaseName
+     * @param version
+     * @param dbConfig
+     */
+    public static void prepare(Context context, String databaseName, int version, DBConfig dbConfig) {
         if (isPrepared) {
             return;
         }
@@ -127,11 +267,25 @@ public class JackyDBHelper extends SQLiteOpenHelper {
                     databaseName = databaseName + ".db";
                 }
             }
-            instance = new JackyDBHelper(context, databaseName, null, version);
+            instance = new JackyDBHelper(context, databaseName, null, version, dbConfig == null ? new DBConfig() : dbConfig);
             isPrepared = true;
         }
     }
 
+    /**
+     * 關閉資料庫並回到尚未 prepare() 的狀態 之後可以用不同的設定重新 prepare()
+     * 只給測試使用 已經取得的 JackyDao 與 JackyAsyncDao 不會跟著失效 呼叫前應停止使用
+     */
+    static void release() {
+        synchronized (JackyDBHelper.class) {
+            if (instance != null) {
+                instance.close();
+                instance = null;
+            }
+            isPrepared = false;
+        }
+    }
+
     /**
      * 使用 getInstance() 前 請先呼叫 prepare()
      *
@@ -178,9 +332,113 @@ public class JackyDBHelper extends SQLiteOpenHelper {
         return daoMap.get(daoClass);
     }
 
-    private JackyDBHelper(Context context, String name, CursorFactory factory, int version) {
+    private JackyDBHelper(Context context, String name, CursorFactory factory, int version, DBConfig dbConfig) {
         super(context, name, factory, version);
         appContext = context.getApplicationContext();
+        this.dbConfig = dbConfig;
+        setWriteAheadLoggingEnabled(dbConfig.isWriteAheadLoggingEnabled());
+    }
+
+    /**
+     * 尚未呼叫 prepare() 時回傳 null
+     *
+     * @return
+     */
+    public static DBConfig getDBConfig() {
+        JackyDBHelper helper = instance;
+        return helper == null ? null : helper.dbConfig;
+    }
+
+    /**
+     * 開啟資料庫時會呼叫 在這裡套用 DBConfig 的設定
+     * page_size 必須在建立資料表之前設定 因此不能放在 onCreate()
+     * PRAGMA synchronous 不能在交易中修改 因此直接執行 不另外開交易
+     * PRAGMA 不是 SELECT 系統會在負責寫入的主連線上執行
+     * (WAL 模式下系統另外開給查詢用的連線 cache_size 與 mmap_size 會維持 SQLite 的預設值)
+     * 設定後會讀回 synchronous 與 page_size 與設定不同時記錄警告
+     *
+     * @param db
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        if (dbConfig.getMaxSqlCacheSize() != DBConfig.UNSET) {
+            db.setMaxSqlCacheSize(dbConfig.getMaxSqlCacheSize());
+        }
+        if (dbConfig.getPageSize() != DBConfig.UNSET) {
+            executePragma(db, "PRAGMA page_size = " + dbConfig.getPageSize());
+        }
+        if (dbConfig.getSynchronous() != null) {
+            executePragma(db, "PRAGMA synchronous = " + dbConfig.getSynchronous().name());
+        }
+        if (dbConfig.isCacheSizeSet) {
+            executePragma(db, "PRAGMA cache_size = " + dbConfig.getCacheSize());
+        }
+        if (dbConfig.getMmapSize() != DBConfig.UNSET) {
+            executePragma(db, "PRAGMA mmap_size = " + dbConfig.getMmapSize());
+        }
+        if (dbConfig.getPageSize() != DBConfig.UNSET) {
+            long pageSize = queryPragma(db, "page_size");
+            if (pageSize != dbConfig.getPageSize()) {
+                //已經有資料的資料庫 或已經是 WAL 模式時 SQLite 會忽略新的 page_size
+                LogUtils.w(TAG, "onConfigure() page_size is " + pageSize + ", expected " + dbConfig.getPageSize());
+            }
+        }
+        if (dbConfig.getSynchronous() != null) {
+            //PRAGMA synchronous 回傳 0 = OFF, 1 = NORMAL, 2 = FULL
+            long synchronous = queryPragma(db, "synchronous");
+            if (synchronous != dbConfig.getSynchronous().ordinal()) {
+                LogUtils.w(TAG, "onConfigure() synchronous is " + synchronous + ", expected "
+                        + dbConfig.getSynchronous().ordinal() + " (" + dbConfig.getSynchronous().name() + ")");
+            }
+        }
+    }
+
+    /**
+     * 部分 PRAGMA (例如 mmap_size) 會回傳結果 execSQL() 會拋出例外 因此一律使用 rawQuery() 執行
+     * 設定失敗只會記錄警告 不影響資料庫開啟
+     *
+     * @param db
+     * @param sql
+     */
+    private static void executePragma(SQLiteDatabase db, String sql) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, null);
+            if (cursor != null) {
+                cursor.moveToFirst();
+            }
+        } catch (SQLException e) {
+            LogUtils.w(TAG, "executePragma() failed: " + sql + " " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * 讀取 PRAGMA 目前的值 失敗時回傳 DBConfig.UNSET
+     *
+     * @param db
+     * @param name 例如 "synchronous"
+     * @return
+     */
+    static long queryPragma(SQLiteDatabase db, String name) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("PRAGMA " + name, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+        } catch (SQLException e) {
+            LogUtils.w(TAG, "queryPragma() failed: " + name + " " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return DBConfig.UNSET;
     }
 
     @Override
@@ -190,20 +448,8 @@ public class JackyDBHelper extends SQLiteOpenHelper {
             Class<? extends JackyDao> jackyDaoClass = classJackyDaoEntry.getKey();
             ArrayList<JackyDao.ColumnInfo> columnInfos = dao.getColumnInfos();
             if (columnInfos != null && columnInfos.size() > 0) {
-                StringBuilder sbForSQL = new StringBuilder(
-                        "CREATE TABLE " + jackyDaoClass.getSimpleName() + " (" +
-                                KEY_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                                UPDATE_TIME + " DATETIME NOT NULL DEFAULT (datetime('now','localtime'))");
-                for (JackyDao.ColumnInfo columnInfo : columnInfos) {
-                    sbForSQL.append(", ")
-                            .append(columnInfo.getColumnName())
-                            .append(" ")
-                            .append(columnInfo.getDataType().name)
-                            .append(columnInfo.isAllowNull() ? "" : " NOT　NULL")
-                            .append(StringUtils.isNullOrEmpty(columnInfo.getDefaultValue()) ? "" : " DEFAULT " + columnInfo.getDefaultValue());
-                }
-                sbForSQL.append(")");
-                db.execSQL(sbForSQL.toString());
+                db.execSQL(buildCreateTableSql(jackyDaoClass.getSimpleName(), columnInfos));
+                createIndexes(db, jackyDaoClass.getSimpleName(), dao.getIndexInfos());
             }
         }
         if (onTableInitListener != null) {
@@ -215,8 +461,8 @@ public class JackyDBHelper extends SQLiteOpenHelper {
     /**
      * 如果開發者有自己設定 onUpgradeListener
      * 則會使用開發者自訂的邏輯去走
-     * 否則就用預設的邏輯 將舊的資料表全部刪除
-     * 然後重建一次新的資料表
+     * 否則就用預設的邏輯 呼叫 migrateSchema() 將資料表升級成目前宣告的結構 並保留既有的資料
+     * 只有在自動升級失敗時 才會將舊的資料表全部刪除 然後重建一次新的資料表
      *
      * @param db
      * @param oldVersion
@@ -226,19 +472,121 @@ public class JackyDBHelper extends SQLiteOpenHelper {
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         if (onUpgradeListener != null) {
             onUpgradeListener.onUpgrade(db, oldVersion, newVersion);
-        } else {
-            //下面會刪除db裡面所有的資料表
-            Cursor cursor = db.rawQuery(
-                    "SELECT name FROM sqlite_master WHERE type ='table' AND name != 'sqlite_sequence'", null);
-            if (cursor != null) {
-                while (cursor.moveToNext()) {
-                    db.execSQL("DROP TABLE " + cursor.getString(0));
-                    LogUtils.d(TAG, "delete table: " + cursor.getString(0));
+            //開發者自訂的升級流程結束後 補上新宣告的索引
+            for (Map.Entry<Class<? extends JackyDao>, JackyDao> classJackyDaoEntry : daoMap.entrySet()) {
+                try {
+                    createIndexes(db, classJackyDaoEntry.getKey().getSimpleName(),
+                            classJackyDaoEntry.getValue().getIndexInfos());
+                } catch (SQLException e) {
+                    LogUtils.w(TAG, "onUpgrade() failed: can not create indexes of "
+                            + classJackyDaoEntry.getKey().getSimpleName() + ", " + e.getMessage());
                 }
-                cursor.close();
             }
-            //然後呼叫 onCreate 重新建立資料表
-            onCreate(db);
+        } else {
+            //預設會比對目前註冊的 Dao 與資料庫中既有的資料表 只補上缺少的部分 不刪除資料
+            if (!migrateSchema(db)) {
+                //自動升級失敗時 才退回舊的做法 刪除所有資料表後重建
+                dropAllTables(db);
+                onCreate(db);
+            }
+        }
+    }
+
+    /**
+     * 比對所有已註冊的 Dao 與資料庫中既有的資料表 將資料表升級成目前宣告的結構 既有的資料都會保留
+     * 1. 不存在的資料表會直接建立
+     * 2. 新增的欄位會使用 ALTER TABLE ADD COLUMN 加上
+     * 3. 只有在既有欄位的型態改變時 才會建立新的資料表並把資料複製過去
+     * 4. 補上缺少的索引
+     * 不再宣告的欄位與未註冊的資料表都會保留原樣
+     * 沒有設定 onUpgradeListener 時 onUpgrade() 預設就會呼叫此方法
+     * 自訂的 onUpgradeListener 也可以在自己的升級流程中呼叫此方法
+     * 回傳 false 代表升級過程發生錯誤
+     *
+     * @param db
+     * @return
+     */
+    public static boolean migrateSchema(SQLiteDatabase db) {
+        return JackyDBMigrator.migrate(db, daoMap);
+    }
+
+    /**
+     * 刪除 db 裡面所有的資料表
+     *
+     * @param db
+     */
+    private static void dropAllTables(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery(
+                "SELECT name FROM sqlite_master WHERE type ='table' AND name != 'sqlite_sequence'", null);
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                db.execSQL("DROP TABLE " + cursor.getString(0));
+                LogUtils.d(TAG, "delete table: " + cursor.getString(0));
+            }
+            cursor.close();
+        }
+    }
+
+    /**
+     * 組出建立資料表的 SQL 每個資料表都會自動加上 _id 與 updateTime 兩個欄位
+     *
+     * @param tableName
+     * @param columnInfos
+     * @return
+     */
+    static String buildCreateTableSql(String tableName, ArrayList<JackyDao.ColumnInfo> columnInfos) {
+        StringBuilder sbForSQL = new StringBuilder(
+                "CREATE TABLE " + tableName + " (" +
+                        KEY_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        UPDATE_TIME + " DATETIME NOT NULL DEFAULT (datetime('now','localtime'))");
+        for (JackyDao.ColumnInfo columnInfo : columnInfos) {
+            sbForSQL.append(", ")
+                    .append(buildColumnDefinition(columnInfo));
+        }
+        sbForSQL.append(")");
+        return sbForSQL.toString();
+    }
+
+    /**
+     * 組出單一欄位的定義 CREATE TABLE 與 ALTER TABLE ADD COLUMN 共用
+     *
+     * @param columnInfo
+     * @return
+     */
+    static String buildColumnDefinition(JackyDao.ColumnInfo columnInfo) {
+        return columnInfo.getColumnName() +
+                " " +
+                columnInfo.getDataType().name +
+                (columnInfo.isAllowNull() ? "" : " NOT　NULL") +
+                (StringUtils.isNullOrEmpty(columnInfo.getDefaultValue()) ? "" : " DEFAULT " + columnInfo.getDefaultValue());
+    }
+
+    /**
+     * 建立資料表的索引 已經存在的索引會略過
+     *
+     * @param db
+     * @param tableName
+     * @param indexInfos
+     */
+    static void createIndexes(SQLiteDatabase db, String tableName, ArrayList<JackyDao.IndexInfo> indexInfos) {
+        if (indexInfos == null) {
+            return;
+        }
+        for (JackyDao.IndexInfo indexInfo : indexInfos) {
+            String[] columnNames = indexInfo.getColumnNames();
+            StringBuilder sbForSQL = new StringBuilder("CREATE ")
+                    .append(indexInfo.isUnique() ? "UNIQUE " : "")
+                    .append("INDEX IF NOT EXISTS ")
+                    .append(indexInfo.getIndexName())
+                    .append(" ON ")
+                    .append(tableName)
+                    .append(" (")
+                    .append(columnNames[0]);
+            for (int i = 1; i < columnNames.length; i++) {
+                sbForSQL.append(", ").append(columnNames[i]);
+            }
+            sbForSQL.append(")");
+            db.execSQL(sbForSQL.toString());
         }
     }
 
@@ -250,6 +598,28 @@ public class JackyDBHelper extends SQLiteOpenHelper {
         void onTableInit(SQLiteDatabase db);
     }
 
+    /**
+     * 不關閉資料庫 只釋放可以釋放的記憶體 適合在 app 切換到背景時呼叫
+     * 開啟 WAL 時會先將 WAL 的內容寫回資料庫檔案 避免 -wal 檔案持續變大
+     * 之後回到前景時可以直接沿用既有的連線與快取 不需要重新開啟資料庫
+     * 會進行檔案 I/O 請不要在主執行緒呼叫
+     */
+    public void checkpointAndTrimMemory() {
+        SQLiteDatabase db = writableDatabase;
+        if (db == null || !db.isOpen()) {
+            return;
+        }
+        try {
+            if (db.isWriteAheadLoggingEnabled()) {
+                executePragma(db, "PRAGMA wal_checkpoint");
+            }
+        } catch (IllegalStateException e) {
+            //資料庫可能在這段期間被其他執行緒關閉
+            LogUtils.w(TAG, "checkpointAndTrimMemory() failed: " + e.getMessage());
+        }
+        SQLiteDatabase.releaseMemory();
+    }
+
     public void closeDBIfExist() {
         if (readableDatabase != null && readableDatabase.isOpen()) {
             readableDatabase.close();
@@ -0,0 +1,148 @@
+package com.jackylibrary;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.jackylibrary.model.JackyDao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.jackylibrary.JackyDBHelper.KEY_ID;
+import static com.jackylibrary.JackyDBHelper.UPDATE_TIME;
+
+/**
+ * JackyDBHelper.migrateSchema() 的實作
+ * 透過 PRAGMA table_info 取得資料表既有的欄位 再與 Dao 宣告的 ColumnInfo 比對
+ * 能用 ALTER TABLE 解決的就不重建資料表 避免升級版本時清空使用者的資料
+ */
+class JackyDBMigrator {
+
+    private static final String TAG = JackyDBMigrator.class.getName();
+    private static final String REBUILD_TABLE_POSTFIX = "_jacky_migration";
+
+    /**
+     * 回傳 false 代表升級過程發生錯誤
+     *
+     * @param db
+     * @param daoMap
+     * @return
+     */
+    static boolean migrate(SQLiteDatabase db, HashMap<Class<? extends JackyDao>, JackyDao> daoMap) {
+        try {
+            for (Map.Entry<Class<? extends JackyDao>, JackyDao> classJackyDaoEntry : daoMap.entrySet()) {
+                String tableName = classJackyDaoEntry.getKey().getSimpleName();
+                JackyDao dao = classJackyDaoEntry.getValue();
+                ArrayList<JackyDao.ColumnInfo> columnInfos = dao.getColumnInfos();
+                if (columnInfos == null || columnInfos.size() == 0) {
+                    continue;
+                }
+                migrateTable(db, tableName, columnInfos);
+                JackyDBHelper.createIndexes(db, tableName, dao.getIndexInfos());
+            }
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            LogUtils.e(TAG, "migrate() error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void migrateTable(SQLiteDatabase db, String tableName, ArrayList<JackyDao.ColumnInfo> columnInfos) {
+        HashMap<String, String> existingColumns = getExistingColumns(db, tableName);
+        if (existingColumns.isEmpty()) {
+            db.execSQL(JackyDBHelper.buildCreateTableSql(tableName, columnInfos));
+            LogUtils.d(TAG, "create table: " + tableName);
+            return;
+        }
+        ArrayList<JackyDao.ColumnInfo> addedColumns = new ArrayList<>();
+        boolean isTypeChanged = false;
+        for (JackyDao.ColumnInfo columnInfo : columnInfos) {
+            String existingType = existingColumns.get(columnInfo.getColumnName());
+            if (existingType == null) {
+                addedColumns.add(columnInfo);
+            } else if (!isSameType(existingType, columnInfo.getDataType())) {
+                isTypeChanged = true;
+            }
+        }
+        if (isTypeChanged) {
+            rebuildTable(db, tableName, columnInfos, existingColumns);
+            return;
+        }
+        for (JackyDao.ColumnInfo columnInfo : addedColumns) {
+            db.execSQL("ALTER TABLE " + tableName + " ADD COLUMN " + JackyDBHelper.buildColumnDefinition(columnInfo));
+            LogUtils.d(TAG, "add column: " + tableName + "." + columnInfo.getColumnName());
+        }
+    }
+
+    /**
+     * 有欄位的型態改變時 SQLite 無法直接修改欄位 只能建立新的資料表 把舊資料複製過去再刪除舊的資料表
+     * 兩邊都有的欄位 (包含 _id 與 updateTime) 會被複製 資料會依新欄位的型態轉換
+     *
+     * @param db
+     * @param tableName
+     * @param columnInfos
+     * @param existingColumns
+     */
+    private static void rebuildTable(SQLiteDatabase db, String tableName, ArrayList<JackyDao.ColumnInfo> columnInfos,
+                                     HashMap<String, String> existingColumns) {
+        String oldTableName = tableName + REBUILD_TABLE_POSTFIX;
+        StringBuilder sbForColumns = new StringBuilder(KEY_ID).append(", ").append(UPDATE_TIME);
+        for (JackyDao.ColumnInfo columnInfo : columnInfos) {
+            if (existingColumns.containsKey(columnInfo.getColumnName())) {
+                sbForColumns.append(", ").append(columnInfo.getColumnName());
+            }
+        }
+        String columns = sbForColumns.toString();
+        db.execSQL("ALTER TABLE " + tableName + " RENAME TO " + oldTableName);
+        db.execSQL(JackyDBHelper.buildCreateTableSql(tableName, columnInfos));
+        db.execSQL("INSERT INTO " + tableName + " (" + columns + ") SELECT " + columns + " FROM " + oldTableName);
+        //舊資料表的索引會跟著被刪除 之後再由 createIndexes() 在新資料表上重新建立
+        db.execSQL("DROP TABLE " + oldTableName);
+        LogUtils.d(TAG, "rebuild table: " + tableName);
+    }
+
+    /**
+     * 回傳資料表既有的欄位名稱與宣告的型態 資料表不存在時回傳空的 HashMap
+     *
+     * @param db
+     * @param tableName
+     * @return
+     */
+    private static HashMap<String, String> getExistingColumns(SQLiteDatabase db, String tableName) {
+        HashMap<String, String> existingColumns = new HashMap<>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+        if (cursor == null) {
+            return existingColumns;
+        }
+        try {
+            int nameIndex = cursor.getColumnIndex("name");
+            int typeIndex = cursor.getColumnIndex("type");
+            while (cursor.moveToNext()) {
+                existingColumns.put(cursor.getString(nameIndex), cursor.getString(typeIndex));
+            }
+        } finally {
+            cursor.close();
+        }
+        return existingColumns;
+    }
+
+    /**
+     * 宣告的型態後面可能還接著其他字 (例如舊版建立的 "TEXT NOT　NULL") 這邊只比對第一個字
+     *
+     * @param declaredType
+     * @param dataType
+     * @return
+     */
+    private static boolean isSameType(String declaredType, JackyDBHelper.DataType dataType) {
+        if (declaredType == null) {
+            return false;
+        }
+        String trimmedType = declaredType.trim();
+        int spaceIndex = trimmedType.indexOf(' ');
+        String typeName = spaceIndex == -1 ? trimmedType : trimmedType.substring(0, spaceIndex);
+        return typeName.equalsIgnoreCase(dataType.name);
+    }
+}
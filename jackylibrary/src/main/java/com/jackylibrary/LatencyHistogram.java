@@ -0,0 +1,72 @@
+package com.jackylibrary;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 記錄耗時 (ns) 的分佈 可以在多條執行緒同時呼叫 record()
+ * 以 2 的次方分組 第 i 組為 [2^(i-1), 2^i - 1] ns 百分位數回傳該組的上限 誤差在 2 倍以內
+ */
+class LatencyHistogram {
+
+    private static final int BUCKET_COUNT = 64;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(BUCKET_COUNT - Long.numberOfLeadingZeros(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * 重置期間仍在記錄的數值可能只有部分被清除 統計用途可以接受
+     */
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    LogStatistics.Latency snapshot() {
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        long snapshotCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts[i] = buckets.get(i);
+            snapshotCount += bucketCounts[i];
+        }
+        long max = maxNanos.get();
+        return new LogStatistics.Latency(count.get(), totalNanos.get(), max,
+                getPercentile(bucketCounts, snapshotCount, max, 0.5),
+                getPercentile(bucketCounts, snapshotCount, max, 0.9),
+                getPercentile(bucketCounts, snapshotCount, max, 0.99));
+    }
+
+    private static long getPercentile(long[] bucketCounts, long totalCount, long max, double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(totalCount * percentile);
+        long accumulated = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            accumulated += bucketCounts[i];
+            if (accumulated >= target) {
+                long upperBound = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(upperBound, max);
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,39 @@
+package com.jackylibrary;
+
+/**
+ * 一筆 log 的內容 由 BinaryLogReader.read() 與 MemoryLogSink.getRecords() 回傳 內容不會再改變
+ */
+public class LogEntry {
+    private final long timestamp;
+    private final int level;
+    private final String tag;
+    private final String message;
+
+    LogEntry(long timestamp, int level, String tag, String message) {
+        this.timestamp = timestamp;
+        this.level = level;
+        this.tag = tag;
+        this.message = message;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * 與 LogUtils.VERBOSE ~ LogUtils.ERROR 相同
+     *
+     * @return
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
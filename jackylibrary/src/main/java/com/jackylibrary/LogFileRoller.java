@@ -0,0 +1,264 @@
+package com.jackylibrary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 負責 LogUtils 的 log 檔案輪替
+ * 檔案命名規則: 當天正在寫入的檔案為 yyyyMMdd_log.txt 超過大小後改名為 yyyyMMdd_log.N.txt (N 從 1 開始)
+ * 已經輪替的檔案與前幾天的檔案會在背景執行緒壓縮成 .gz 並依 RollingPolicy 刪除最舊的檔案
+ */
+class LogFileRoller {
+
+    private static final String TAG = LogFileRoller.class.getName();
+    static final String GZIP_POSTFIX = ".gz";
+    private static final String TEMP_POSTFIX = ".tmp";
+    private static ExecutorService executor;
+
+    /**
+     * 將正在寫入的檔案改名成下一個編號 回傳改名後的檔案 失敗時回傳 null
+     * 呼叫前必須先關閉該檔案的串流
+     *
+     * @param activeFile  例如 20200101_log.txt
+     * @param namePrefix  例如 20200101_log
+     * @param namePostfix 例如 .txt
+     * @return
+     */
+    static File rollFile(File activeFile, String namePrefix, String namePostfix) {
+        File rolledFile = getFreeRolledFile(activeFile.getParentFile(), namePrefix, namePostfix);
+        if (!activeFile.renameTo(rolledFile)) {
+            LogUtils.onlyLogW(TAG, "rollFile() failed: can not rename " + activeFile.getAbsolutePath());
+            return null;
+        }
+        return rolledFile;
+    }
+
+    /**
+     * 回傳下一個未使用的編號檔案 例如 20200101_log.N.txt 壓縮後的 .gz 也不能存在
+     *
+     * @param directory
+     * @param namePrefix
+     * @param namePostfix
+     * @return
+     */
+    private static File getFreeRolledFile(File directory, String namePrefix, String namePostfix) {
+        int index = 1;
+        File rolledFile = new File(directory, namePrefix + "." + index + namePostfix);
+        while (rolledFile.exists() || new File(directory, rolledFile.getName() + GZIP_POSTFIX).exists()) {
+            index++;
+            rolledFile = new File(directory, namePrefix + "." + index + namePostfix);
+        }
+        return rolledFile;
+    }
+
+    /**
+     * 在背景執行緒壓縮已經不會再寫入的檔案 並刪除超過保留上限的檔案
+     * activeFileNames 為可能還會寫入的檔名 (當天的檔案與目前開啟中的檔案) 永遠不會被壓縮或刪除
+     *
+     * @param directories
+     * @param activeFileNames
+     * @param namePostfixes     各種格式的副檔名
+     * @param isCompressEnabled
+     * @param maxFileCount      0 代表不限制
+     * @param maxTotalBytes     0 代表不限制
+     */
+    static void scheduleMaintenance(final File[] directories, final HashSet<String> activeFileNames, final String[] namePostfixes,
+                                    final boolean isCompressEnabled, final int maxFileCount, final long maxTotalBytes) {
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (File directory : directories) {
+                    if (directory == null || !directory.isDirectory()) {
+                        continue;
+                    }
+                    if (isCompressEnabled) {
+                        compressClosedFiles(directory, activeFileNames, namePostfixes);
+                    }
+                    applyRetention(directory, activeFileNames, namePostfixes, maxFileCount, maxTotalBytes);
+                }
+            }
+        });
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            //同一時間只需要一條執行緒 多餘的工作排隊即可 閒置時執行緒會自動結束
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "LogUtils-roller");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            executor = threadPoolExecutor;
+        }
+        return executor;
+    }
+
+    private static File[] listLogFiles(File directory, String[] namePostfixes) {
+        ArrayList<File> logFiles = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isFile() && getMatchedPostfix(name, namePostfixes) != null) {
+                logFiles.add(file);
+            }
+        }
+        return logFiles.toArray(new File[logFiles.size()]);
+    }
+
+    /**
+     * 回傳檔名符合的副檔名 (未壓縮或 .gz) 都不符合時回傳 null
+     *
+     * @param name
+     * @param namePostfixes
+     * @return
+     */
+    private static String getMatchedPostfix(String name, String[] namePostfixes) {
+        for (String namePostfix : namePostfixes) {
+            if (name.endsWith(namePostfix)) {
+                return namePostfix;
+            }
+            if (name.endsWith(namePostfix + GZIP_POSTFIX)) {
+                return namePostfix + GZIP_POSTFIX;
+            }
+        }
+        return null;
+    }
+
+    private static void compressClosedFiles(File directory, HashSet<String> activeFileNames, String[] namePostfixes) {
+        for (File file : listLogFiles(directory, namePostfixes)) {
+            String name = file.getName();
+            if (!name.endsWith(GZIP_POSTFIX) && !activeFileNames.contains(name)) {
+                compress(file, getMatchedPostfix(name, namePostfixes));
+            }
+        }
+    }
+
+    /**
+     * 先寫到暫存檔 完成後才改名並刪除原始檔 避免中途被中斷時留下不完整的 .gz
+     * 同名的 .gz 已經存在時 (例如同一天的檔案先前已經壓縮過) 改用下一個未使用的編號 不覆蓋已經壓縮的 log
+     *
+     * @param sourceFile
+     * @param namePostfix 例如 .txt
+     */
+    private static void compress(File sourceFile, String namePostfix) {
+        File directory = sourceFile.getParentFile();
+        File targetFile = new File(directory, sourceFile.getName() + GZIP_POSTFIX);
+        if (targetFile.exists()) {
+            String name = sourceFile.getName();
+            String namePrefix = name.substring(0, name.length() - namePostfix.length());
+            File rolledFile = getFreeRolledFile(directory, namePrefix, namePostfix);
+            targetFile = new File(directory, rolledFile.getName() + GZIP_POSTFIX);
+        }
+        File tempFile = new File(sourceFile.getParentFile(), targetFile.getName() + TEMP_POSTFIX);
+        InputStream is = null;
+        OutputStream os = null;
+        boolean isSuccessful = false;
+        try {
+            is = new BufferedInputStream(new FileInputStream(sourceFile));
+            os = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                os.write(buffer, 0, len);
+            }
+            os.close();
+            os = null;
+            //renameTo 在 Android 上會直接覆蓋已經存在的檔案 改名前再確認一次
+            isSuccessful = !targetFile.exists() && tempFile.renameTo(targetFile);
+            if (isSuccessful) {
+                //保留原始檔的修改時間 保留規則才能依時間判斷新舊
+                targetFile.setLastModified(sourceFile.lastModified());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            LogUtils.onlyLogW(TAG, "compress() failed: " + sourceFile.getAbsolutePath() + " " + e.getMessage());
+        } finally {
+            closeQuietly(is);
+            closeQuietly(os);
+        }
+        if (isSuccessful) {
+            FileUtils.deleteOneFile(sourceFile);
+        } else if (tempFile.exists()) {
+            FileUtils.deleteOneFile(tempFile);
+        }
+    }
+
+    /**
+     * 由新到舊保留檔案 超過數量或總大小上限後 其餘較舊的檔案全部刪除
+     *
+     * @param directory
+     * @param activeFileNames
+     * @param namePostfixes
+     * @param maxFileCount
+     * @param maxTotalBytes
+     */
+    private static void applyRetention(File directory, HashSet<String> activeFileNames, String[] namePostfixes,
+                                       int maxFileCount, long maxTotalBytes) {
+        if (maxFileCount <= 0 && maxTotalBytes <= 0) {
+            return;
+        }
+        File[] logFiles = listLogFiles(directory, namePostfixes);
+        Arrays.sort(logFiles, Collections.reverseOrder(new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                long modified1 = file1.lastModified();
+                long modified2 = file2.lastModified();
+                if (modified1 != modified2) {
+                    return modified1 < modified2 ? -1 : 1;
+                }
+                return file1.getName().compareTo(file2.getName());
+            }
+        }));
+        int keptCount = 0;
+        long keptBytes = 0;
+        for (File file : logFiles) {
+            long length = file.length();
+            boolean isActive = activeFileNames.contains(file.getName());
+            boolean isOverCount = maxFileCount > 0 && keptCount >= maxFileCount;
+            boolean isOverBytes = maxTotalBytes > 0 && keptBytes + length > maxTotalBytes;
+            if (!isActive && (isOverCount || isOverBytes)) {
+                FileUtils.deleteOneFile(file);
+                continue;
+            }
+            keptCount++;
+            keptBytes += length;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
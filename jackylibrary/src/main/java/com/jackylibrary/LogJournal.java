@@ -0,0 +1,256 @@
+package com.jackylibrary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+/**
+ * 以 mmap 對應的固定大小檔案 記錄 LogUtils.LogBuffer 中還沒寫入 log 檔案的 log
+ * 寫入只是複製到記憶體 由系統負責寫回磁碟 因此 app 被強制結束或崩潰時內容仍會保留 (斷電則不保證)
+ * 資料區是環狀的 寫到結尾時從頭覆蓋 最舊的 log 可能因此被覆蓋
+ * <p>
+ * 檔案格式:
+ * 檔頭 (HEADER_SIZE): "JLMJ" 版本(int) 資料區大小(int) 保留(int) 已寫入 log 檔案的最後序號(long)
+ * 每筆 log: FRAME_MAGIC(int) 長度(int) 序號(long) 時間(long) 等級(byte) tag 長度(int) tag 內容長度(int) 內容 CRC32(int)
+ * 長度包含整筆資料 CRC32 的範圍為序號到內容結尾 寫到一半被中斷的 log 會因為 CRC32 不符而被忽略
+ * <p>
+ * 不是 thread safe 由 LogUtils.LogBuffer 在 lock 中使用
+ */
+class LogJournal {
+
+    private static final String TAG = LogJournal.class.getName();
+    private static final int MAGIC = 0x4A4C4D4A;
+    private static final int FORMAT_VERSION = 1;
+    private static final int FRAME_MAGIC = 0x4A4C5246;
+    private static final int HEADER_SIZE = 32;
+    private static final int COMMITTED_SEQUENCE_OFFSET = 16;
+    //FRAME_MAGIC 長度 序號 時間 等級 tag 長度 內容長度 CRC32
+    private static final int FRAME_OVERHEAD = 4 + 4 + 8 + 8 + 1 + 4 + 4 + 4;
+    static final int MIN_CAPACITY = 4 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final CRC32 crc32 = new CRC32();
+    private byte[] frameBytes = new byte[256];
+    private long nextSequence = 1;
+    private int position = 0;
+
+    private LogJournal(RandomAccessFile randomAccessFile, MappedByteBuffer buffer, int capacity) {
+        this.randomAccessFile = randomAccessFile;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * 建立新的 journal 檔案 已經存在的檔案會被覆蓋 呼叫前應先用 readUncommitted() 取回其中的 log
+     * 失敗時回傳 null
+     *
+     * @param file
+     * @param capacity 資料區大小 (bytes)
+     * @return
+     */
+    static LogJournal create(File file, int capacity) {
+        if (capacity < MIN_CAPACITY) {
+            capacity = MIN_CAPACITY;
+        }
+        if (file.exists() && !file.delete()) {
+            LogUtils.onlyLogW(TAG, "create() failed: can not delete old journal, filePath: " + file.getAbsolutePath());
+            return null;
+        }
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            //新檔案的內容全部為 0 不會被誤認為 log
+            randomAccessFile.setLength(HEADER_SIZE + capacity);
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.putInt(8, capacity);
+            buffer.putLong(COMMITTED_SEQUENCE_OFFSET, 0);
+            return new LogJournal(randomAccessFile, buffer, capacity);
+        } catch (IOException e) {
+            e.printStackTrace();
+            LogUtils.onlyLogW(TAG, "create() failed: " + e.getMessage());
+            closeQuietly(randomAccessFile);
+            return null;
+        }
+    }
+
+    /**
+     * 寫入一筆 log 超過資料區大小的 log 不會被記錄
+     *
+     * @param timestamp
+     * @param level
+     * @param tag
+     * @param message
+     */
+    void append(long timestamp, int level, String tag, String message) {
+        byte[] tagBytes = tag == null ? new byte[0] : tag.getBytes(UTF_8);
+        byte[] messageBytes = message == null ? new byte[0] : message.getBytes(UTF_8);
+        int frameLength = FRAME_OVERHEAD + tagBytes.length + messageBytes.length;
+        if (frameLength > capacity) {
+            return;
+        }
+        if (frameBytes.length < frameLength) {
+            frameBytes = new byte[Math.max(frameLength, frameBytes.length * 2)];
+        }
+        //先在陣列中組好整筆資料 才能計算 CRC32 之後一次複製到 mmap 區域
+        ByteBuffer frame = ByteBuffer.wrap(frameBytes, 0, frameLength);
+        frame.putInt(FRAME_MAGIC);
+        frame.putInt(frameLength);
+        frame.putLong(nextSequence);
+        frame.putLong(timestamp);
+        frame.put((byte) level);
+        frame.putInt(tagBytes.length);
+        frame.put(tagBytes);
+        frame.putInt(messageBytes.length);
+        frame.put(messageBytes);
+        crc32.reset();
+        crc32.update(frameBytes, 8, frameLength - 12);
+        frame.putInt((int) crc32.getValue());
+        if (position + frameLength > capacity) {
+            position = 0;
+        }
+        buffer.position(HEADER_SIZE + position);
+        buffer.put(frameBytes, 0, frameLength);
+        position += frameLength;
+        nextSequence++;
+    }
+
+    /**
+     * 目前為止寫入的 log 都已經寫進 log 檔案 下次復原時不需要再取回
+     */
+    void markCommitted() {
+        buffer.putLong(COMMITTED_SEQUENCE_OFFSET, nextSequence - 1);
+    }
+
+    /**
+     * 解除對應要等 GC 回收 buffer 這邊只關閉檔案
+     */
+    void close() {
+        closeQuietly(randomAccessFile);
+    }
+
+    /**
+     * 依序號由舊到新回傳還沒寫入 log 檔案的 log 檔案格式錯誤或讀取失敗時回傳 null
+     *
+     * @param file
+     * @return
+     */
+    static ArrayList<LogEntry> readUncommitted(File file) {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            long fileLength = randomAccessFile.length();
+            if (fileLength < HEADER_SIZE) {
+                return null;
+            }
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+            int capacity = buffer.getInt(8);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION
+                    || capacity <= 0 || HEADER_SIZE + (long) capacity > fileLength) {
+                LogUtils.onlyLogW(TAG, "readUncommitted() failed: invalid header, filePath: " + file.getAbsolutePath());
+                return null;
+            }
+            long committedSequence = buffer.getLong(COMMITTED_SEQUENCE_OFFSET);
+            ArrayList<Frame> frames = new ArrayList<>();
+            CRC32 crc32 = new CRC32();
+            byte[] frameBytes = new byte[256];
+            int offset = 0;
+            while (offset + FRAME_OVERHEAD <= capacity) {
+                int frameLength = buffer.getInt(HEADER_SIZE + offset + 4);
+                if (buffer.getInt(HEADER_SIZE + offset) != FRAME_MAGIC
+                        || frameLength < FRAME_OVERHEAD || frameLength > capacity - offset) {
+                    //被覆蓋一半的資料 逐 byte 往後找下一筆的開頭
+                    offset++;
+                    continue;
+                }
+                if (frameBytes.length < frameLength) {
+                    frameBytes = new byte[frameLength];
+                }
+                buffer.position(HEADER_SIZE + offset);
+                buffer.get(frameBytes, 0, frameLength);
+                crc32.reset();
+                crc32.update(frameBytes, 8, frameLength - 12);
+                ByteBuffer frame = ByteBuffer.wrap(frameBytes, 0, frameLength);
+                if (frame.getInt(frameLength - 4) != (int) crc32.getValue()) {
+                    offset++;
+                    continue;
+                }
+                frame.position(8);
+                long sequence = frame.getLong();
+                long timestamp = frame.getLong();
+                int level = frame.get();
+                int tagLength = frame.getInt();
+                if (tagLength < 0 || tagLength > frameLength - FRAME_OVERHEAD) {
+                    offset++;
+                    continue;
+                }
+                String tag = new String(frameBytes, frame.position(), tagLength, UTF_8);
+                frame.position(frame.position() + tagLength);
+                int messageLength = frame.getInt();
+                if (messageLength != frameLength - FRAME_OVERHEAD - tagLength) {
+                    offset++;
+                    continue;
+                }
+                String message = new String(frameBytes, frame.position(), messageLength, UTF_8);
+                if (sequence > committedSequence) {
+                    frames.add(new Frame(sequence, new LogEntry(timestamp, level, tag, message)));
+                }
+                offset += frameLength;
+            }
+            return sortBySequence(frames);
+        } catch (IOException e) {
+            e.printStackTrace();
+            LogUtils.onlyLogW(TAG, "readUncommitted() failed: " + e.getMessage());
+            return null;
+        } finally {
+            closeQuietly(randomAccessFile);
+        }
+    }
+
+    private static ArrayList<LogEntry> sortBySequence(ArrayList<Frame> frames) {
+        Collections.sort(frames, new Comparator<Frame>() {
+            @Override
+            public int compare(Frame frame1, Frame frame2) {
+                return frame1.sequence < frame2.sequence ? -1 : (frame1.sequence == frame2.sequence ? 0 : 1);
+            }
+        });
+        ArrayList<LogEntry> records = new ArrayList<>();
+        for (Frame frame : frames) {
+            records.add(frame.record);
+        }
+        return records;
+    }
+
+    private static class Frame {
+        private final long sequence;
+        private final LogEntry record;
+
+        private Frame(long sequence, LogEntry record) {
+            this.sequence = sequence;
+            this.record = record;
+        }
+    }
+
+    private static void closeQuietly(RandomAccessFile randomAccessFile) {
+        if (randomAccessFile == null) {
+            return;
+        }
+        try {
+            randomAccessFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.jackylibrary;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 固定容量 不使用 lock 的環狀佇列 允許多個執行緒同時 offer() 但只能有一個執行緒 poll()
+ * 每個位置都有自己的序號 寫入端用 CAS 搶位置 讀取端依序號判斷該位置是否已經寫好
+ *
+ * @param <E>
+ */
+class LogRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private volatile long dequeuePosition = 0;
+
+    /**
+     * capacity 會被調整成大於等於它的 2 的次方
+     *
+     * @param capacity
+     */
+    LogRingBuffer(int capacity) {
+        int size = 2;
+        while (size < capacity && size < (1 << 30)) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        buffer = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * 回傳 false 代表佇列已滿
+     *
+     * @param element
+     * @return
+     */
+    boolean offer(E element) {
+        long position = enqueuePosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, element);
+                    //序號要在資料寫好之後才更新 讀取端看到新的序號時 一定也看得到資料
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = enqueuePosition.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * 只能由單一的讀取執行緒呼叫 佇列為空時回傳 null
+     *
+     * @return
+     */
+    E poll() {
+        long position = dequeuePosition;
+        int index = (int) (position & mask);
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        E element = buffer.get(index);
+        buffer.lazySet(index, null);
+        sequences.lazySet(index, position + mask + 1);
+        dequeuePosition = position + 1;
+        return element;
+    }
+
+    /**
+     * 目前的大概數量 多執行緒下只能當作參考
+     *
+     * @return
+     */
+    int size() {
+        long size = enqueuePosition.get() - dequeuePosition;
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+}
@@ -0,0 +1,22 @@
+package com.jackylibrary;
+
+/**
+ * log 的輸出目的地 用 LogUtils.addLogSink() 註冊後 每個 sink 都有自己的佇列與背景執行緒
+ * write() 與 flush() 只會在該 sink 的背景執行緒被呼叫 因此實作不需要考慮多執行緒
+ * 執行較慢的 sink 只會讓自己的佇列變滿 不會影響其他 sink 與寫 log 的呼叫端
+ */
+public interface LogSink {
+
+    /**
+     * @param timestamp
+     * @param level     LogUtils.VERBOSE ~ LogUtils.ERROR
+     * @param tag
+     * @param message
+     */
+    void write(long timestamp, int level, String tag, String message);
+
+    /**
+     * 累積到 batchSize 筆 或距離第一筆未 flush 的 log 超過 flushInterval 時呼叫
+     */
+    void flush();
+}
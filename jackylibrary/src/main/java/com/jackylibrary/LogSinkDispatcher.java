@@ -0,0 +1,152 @@
+package com.jackylibrary;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 每個 LogSink 一個 呼叫端只把 log 放進自己的 LogRingBuffer 就返回 佇列滿了直接捨棄
+ * 由背景執行緒依序交給 sink.write() 並在累積 batchSize 筆或超過 flushInterval 時呼叫 sink.flush()
+ */
+class LogSinkDispatcher implements Runnable {
+
+    private static final String TAG = LogSinkDispatcher.class.getName();
+    private static final long IDLE_PARK_NANOS = 1000L * 1000 * 1000;
+    final LogSink sink;
+    private final int minLevel;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final LogRingBuffer<LogUtils.LogRecord> queue;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Thread consumerThread;
+    private volatile boolean isRunning = true;
+    private volatile boolean isConsumerParked = false;
+    private volatile boolean isFlushRequested = false;
+
+    LogSinkDispatcher(LogSink sink, int minLevel, int batchSize, long flushIntervalMillis, int queueCapacity) {
+        this.sink = sink;
+        this.minLevel = minLevel;
+        this.batchSize = batchSize > 0 ? batchSize : 1;
+        this.flushIntervalNanos = Math.max(flushIntervalMillis, 0) * 1000 * 1000;
+        this.queue = new LogRingBuffer<>(queueCapacity);
+        consumerThread = new Thread(this, "LogUtils-sink-" + sink.getClass().getSimpleName());
+        consumerThread.setDaemon(true);
+        consumerThread.start();
+    }
+
+    /**
+     * 等級不符時直接忽略 回傳 false 代表佇列滿了 這筆 log 被捨棄
+     * sink 自己寫 log 時也會被忽略 避免無限循環
+     *
+     * @param record
+     * @return
+     */
+    boolean offer(LogUtils.LogRecord record) {
+        if (record.level < minLevel || Thread.currentThread() == consumerThread || !isRunning) {
+            return true;
+        }
+        if (!queue.offer(record)) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        if (isConsumerParked) {
+            LockSupport.unpark(consumerThread);
+        }
+        return true;
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    void resetDroppedCount() {
+        droppedCount.set(0);
+    }
+
+    void requestFlush() {
+        isFlushRequested = true;
+        LockSupport.unpark(consumerThread);
+    }
+
+    @Override
+    public void run() {
+        int unflushedCount = 0;
+        long firstUnflushedNanos = 0;
+        while (isRunning) {
+            LogUtils.LogRecord record = queue.poll();
+            if (record != null) {
+                write(record);
+                if (unflushedCount == 0) {
+                    firstUnflushedNanos = System.nanoTime();
+                }
+                unflushedCount++;
+                if (unflushedCount >= batchSize) {
+                    flush();
+                    unflushedCount = 0;
+                }
+                continue;
+            }
+            long waitNanos = IDLE_PARK_NANOS;
+            if (unflushedCount > 0) {
+                waitNanos = flushIntervalNanos - (System.nanoTime() - firstUnflushedNanos);
+            }
+            if (isFlushRequested || waitNanos <= 0) {
+                isFlushRequested = false;
+                if (unflushedCount > 0) {
+                    flush();
+                    unflushedCount = 0;
+                }
+                continue;
+            }
+            isConsumerParked = true;
+            //設定旗標後再確認一次 避免錯過 park 前剛放進來的 log
+            if (queue.size() == 0 && !isFlushRequested && isRunning) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            isConsumerParked = false;
+        }
+        LogUtils.LogRecord record;
+        while ((record = queue.poll()) != null) {
+            write(record);
+        }
+        flush();
+    }
+
+    /**
+     * sink 丟出例外時只記錄在 logcat 不讓背景執行緒結束
+     *
+     * @param record
+     */
+    private void write(LogUtils.LogRecord record) {
+        try {
+            sink.write(record.timestamp, record.level, record.tag, record.log);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            LogUtils.onlyLogW(TAG, "write() failed: " + sink.getClass().getName() + " " + e.getMessage());
+        }
+    }
+
+    private void flush() {
+        try {
+            sink.flush();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            LogUtils.onlyLogW(TAG, "flush() failed: " + sink.getClass().getName() + " " + e.getMessage());
+        }
+    }
+
+    /**
+     * 等背景執行緒把佇列中的 log 交給 sink 並 flush 後才返回
+     */
+    void shutdown() {
+        isRunning = false;
+        LockSupport.unpark(consumerThread);
+        if (Thread.currentThread() == consumerThread) {
+            return;
+        }
+        try {
+            consumerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
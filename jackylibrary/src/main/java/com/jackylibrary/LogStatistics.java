@@ -0,0 +1,198 @@
+package com.jackylibrary;
+
+import java.util.Locale;
+
+/**
+ * LogUtils 的統計快照 由 LogUtils.getLogStatistics() 取得 內容不會再改變
+ * 統計從第一次使用 LogUtils 或上次 LogUtils.resetLogStatistics() 開始
+ * 可以定期或在 benchmark 結束後輸出 例如: LogUtils.onlyLogI(TAG, LogUtils.getLogStatistics().toString())
+ */
+public class LogStatistics {
+
+    private final long startTime;
+    private final long snapshotTime;
+    private final long[] loggedCounts;
+    private final long droppedCount;
+    private final long sinkDroppedCount;
+    private final long writtenCount;
+    private final long writtenBytes;
+    private final Latency flushLatency;
+    private final Latency addLogLatency;
+    private final Latency blockedLatency;
+
+    LogStatistics(long startTime, long snapshotTime, long[] loggedCounts, long droppedCount, long sinkDroppedCount,
+                  long writtenCount, long writtenBytes, Latency flushLatency, Latency addLogLatency,
+                  Latency blockedLatency) {
+        this.startTime = startTime;
+        this.snapshotTime = snapshotTime;
+        this.loggedCounts = loggedCounts;
+        this.droppedCount = droppedCount;
+        this.sinkDroppedCount = sinkDroppedCount;
+        this.writtenCount = writtenCount;
+        this.writtenBytes = writtenBytes;
+        this.flushLatency = flushLatency;
+        this.addLogLatency = addLogLatency;
+        this.blockedLatency = blockedLatency;
+    }
+
+    /**
+     * 耗時的統計 單位為 ns 百分位數為近似值
+     */
+    public static class Latency {
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long p50Nanos;
+        private final long p90Nanos;
+        private final long p99Nanos;
+
+        Latency(long count, long totalNanos, long maxNanos, long p50Nanos, long p90Nanos, long p99Nanos) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.p50Nanos = p50Nanos;
+            this.p90Nanos = p90Nanos;
+            this.p99Nanos = p99Nanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getAverageNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP90Nanos() {
+            return p90Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "count=%d avg=%dns p50=%dns p90=%dns p99=%dns max=%dns",
+                    count, getAverageNanos(), p50Nanos, p90Nanos, p99Nanos, maxNanos);
+        }
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getSnapshotTime() {
+        return snapshotTime;
+    }
+
+    /**
+     * 通過等級過濾 輸出到 logcat 的 log 數量
+     *
+     * @param level LogUtils.VERBOSE ~ LogUtils.ERROR
+     * @return
+     */
+    public long getLoggedCount(int level) {
+        return level >= 0 && level < loggedCounts.length ? loggedCounts[level] : 0;
+    }
+
+    public long getTotalLoggedCount() {
+        long total = 0;
+        for (long count : loggedCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * 應該寫入檔案卻被捨棄的 log 數量 包含非同步佇列滿了 (或取樣) 與寫入檔案失敗
+     * 與 LogUtils.getDroppedLogCount() 不同 這邊包含寫入失敗 並且會被 resetLogStatistics() 歸零
+     *
+     * @return
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * 目前加入的 LogSink 因為各自的佇列滿了而被捨棄的 log 數量總和 不包含在 getDroppedCount() 中
+     * 個別 sink 的數量請使用 LogUtils.getSinkDroppedCount()
+     *
+     * @return
+     */
+    public long getSinkDroppedCount() {
+        return sinkDroppedCount;
+    }
+
+    /**
+     * 成功寫入檔案的 log 數量
+     *
+     * @return
+     */
+    public long getWrittenCount() {
+        return writtenCount;
+    }
+
+    /**
+     * 寫入檔案的 bytes (壓縮前)
+     *
+     * @return
+     */
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    public long getFlushCount() {
+        return flushLatency.getCount();
+    }
+
+    /**
+     * 每次將緩存寫入檔案的耗時
+     *
+     * @return
+     */
+    public Latency getFlushLatency() {
+        return flushLatency;
+    }
+
+    /**
+     * 每次將 log 加入緩存的耗時 包含等待 lock 與緩存滿了時的寫入
+     * 非同步模式下由背景執行緒呼叫 不會算在呼叫端 呼叫端的等待時間請參考 getBlockedLatency()
+     *
+     * @return
+     */
+    public Latency getAddLogLatency() {
+        return addLogLatency;
+    }
+
+    /**
+     * 非同步模式使用 OverflowPolicy.BLOCK 時 呼叫端因為佇列滿了而等待的時間
+     * 只記錄有等待的呼叫 count 即為等待的次數
+     *
+     * @return
+     */
+    public Latency getBlockedLatency() {
+        return blockedLatency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "LogStatistics(%dms): logged v=%d d=%d i=%d w=%d e=%d, dropped=%d, sinkDropped=%d, "
+                        + "written=%d (%d bytes), flush[%s], addLog[%s], blocked[%s]",
+                snapshotTime - startTime, getLoggedCount(LogUtils.VERBOSE), getLoggedCount(LogUtils.DEBUG),
+                getLoggedCount(LogUtils.INFO), getLoggedCount(LogUtils.WARN), getLoggedCount(LogUtils.ERROR),
+                droppedCount, sinkDroppedCount, writtenCount, writtenBytes, flushLatency, addLogLatency, blockedLatency);
+    }
+}
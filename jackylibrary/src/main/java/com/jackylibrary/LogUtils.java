@@ -4,332 +4,1633 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Log;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 public class LogUtils {
     private static final String TAG = LogUtils.class.getName();
     private static final String LOG_CONFIG = "logConfig";
     private static final String ENABLE_LOG_TO_FILE = "enableLogToFile";
-    private static final int VERBOSE = 1;
-    private static final int DEBUG = 2;
-    private static final int INFO = 3;
-    private static final int WARN = 4;
-    private static final int ERROR = 5;
+    private static final String MIN_FILE_LOG_LEVEL = "minFileLogLevel";
+    public static final int VERBOSE = 1;
+    public static final int DEBUG = 2;
+    public static final int INFO = 3;
+    public static final int WARN = 4;
+    public static final int ERROR = 5;
     private static final String[] logRanks = {"", "v ", "d ", "i ", "w ", "e "};
     private static Context appContext;
     private static File externalLogDirectory;
     private static File innerLogDirectory;
     private static final int DEFAULT_MAX_LOGS = 30;
     private static int maxLogsInBuffer = DEFAULT_MAX_LOGS;
+    private static volatile LogConfig logConfig;
+    private static volatile int minLogLevel = VERBOSE;
+    private static final ConcurrentHashMap<String, Integer> tagMinLogLevels = new ConcurrentHashMap<>();
+    private static volatile boolean hasTagMinLogLevels = false;
+    //SharedPreferences 只保留 listener 的弱參照 這邊要自己持有
+    private static SharedPreferences.OnSharedPreferenceChangeListener logConfigListener;
     private static LogBuffer logBuffer = new LogBuffer();
     private static final String LOG_DIRECTORY_NAME = "logs";
-    private static final String LOG_FILE_NAME_POSTFIX = "_log.txt";
+    private static final String LOG_JOURNAL_FILE_NAME = "log_journal.jmap";
+    public static final int DEFAULT_JOURNAL_BYTES = 256 * 1024;
+    private static final String LOG_FILE_NAME_INFIX = "_log";
+    private static final int ENCODE_BUFFER_TRIM_SIZE = 256 * 1024;
+    private static volatile LogFormat logFormat = LogFormat.TEXT;
+    //預設不輪替 也不壓縮或刪除任何既有的 log 檔案 需要時由 setRollingPolicy() 開啟
+    private static volatile RollingPolicy rollingPolicy;
     private static final String LOG_DATE_FORMAT = "yyyyMMdd";
     private static final String LOG_TIME_PREFIX_FORMAT = "HH:mm:ss ";
     private static final String NEW_LINE = "\r\n";
-    private static String lastLogDate = "";
+    public static final int DEFAULT_ASYNC_CAPACITY = 1024;
+    private static volatile AsyncLogWriter asyncLogWriter;
+    //統計 由 getLogStatistics() 取得快照
+    private static final AtomicLongArray loggedCounts = new AtomicLongArray(logRanks.length);
+    private static final AtomicLong droppedLogCount = new AtomicLong();
+    private static final AtomicLong writtenLogCount = new AtomicLong();
+    private static final AtomicLong writtenLogBytes = new AtomicLong();
+    private static final LatencyHistogram flushLatency = new LatencyHistogram();
+    private static final LatencyHistogram addLogLatency = new LatencyHistogram();
+    private static final LatencyHistogram blockedLatency = new LatencyHistogram();
+    private static volatile long statisticsStartTime = System.currentTimeMillis();
+    private static volatile LogSinkDispatcher[] sinkDispatchers = new LogSinkDispatcher[0];
+    private static volatile boolean isLogcatEnabled = true;
+    private static final LogSink FILE_LOG_SINK = new FileLogSink();
 
+    /**
+     * 非同步模式下佇列滿了的處理方式
+     * DROP: 直接捨棄新的 log
+     * BLOCK: 呼叫端等待直到佇列有空位
+     * SAMPLE: 佇列超過 3/4 時 v d i 只保留每 SAMPLE_INTERVAL 筆中的一筆 w e 則照常寫入 佇列全滿時捨棄
+     */
+    public enum OverflowPolicy {
+        DROP,
+        BLOCK,
+        SAMPLE
+    }
+
+    /**
+     * LogSink 的設定 例如: new LogUtils.SinkOptions().setMinLevel(LogUtils.WARN).setBatchSize(10)
+     * 預設為所有等級 每 32 筆或 1 秒 flush 一次 佇列容量 DEFAULT_ASYNC_CAPACITY
+     */
+    public static class SinkOptions {
+        private int minLevel = VERBOSE;
+        private int batchSize = 32;
+        private long flushIntervalMillis = 1000;
+        private int queueCapacity = DEFAULT_ASYNC_CAPACITY;
+
+        /**
+         * 低於此等級的 log 不會交給這個 sink
+         *
+         * @param minLevel
+         * @return
+         */
+        public SinkOptions setMinLevel(int minLevel) {
+            this.minLevel = minLevel;
+            return this;
+        }
+
+        /**
+         * 每累積幾筆 log 呼叫一次 sink.flush()
+         *
+         * @param batchSize
+         * @return
+         */
+        public SinkOptions setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * 第一筆還沒 flush 的 log 最多等待多久就呼叫 sink.flush() 0 代表佇列清空時立即 flush
+         *
+         * @param flushIntervalMillis
+         * @return
+         */
+        public SinkOptions setFlushIntervalMillis(long flushIntervalMillis) {
+            this.flushIntervalMillis = flushIntervalMillis;
+            return this;
+        }
+
+        /**
+         * 佇列容量 會調整成 2 的次方 佇列滿了時新的 log 會被捨棄
+         *
+         * @param queueCapacity
+         * @return
+         */
+        public SinkOptions setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public int getMinLevel() {
+            return minLevel;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public long getFlushIntervalMillis() {
+            return flushIntervalMillis;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+    }
+
+    /**
+     * log 設定的快照 內容不會再改變 設定有變動時整個換成新的物件
+     * 每次寫 log 只需要讀一次 volatile 欄位 不需要再去查 SharedPreferences
+     */
+    private static class LogConfig {
+        private final boolean isLogToFileEnabled;
+        private final int minFileLogLevel;
+        private final int maxLogsInBuffer;
+
+        private LogConfig(boolean isLogToFileEnabled, int minFileLogLevel, int maxLogsInBuffer) {
+            this.isLogToFileEnabled = isLogToFileEnabled;
+            this.minFileLogLevel = minFileLogLevel;
+            this.maxLogsInBuffer = maxLogsInBuffer;
+        }
+    }
+
+    /**
+     * log 檔案的格式
+     * TEXT: yyyyMMdd_log.txt 可直接閱讀
+     * BINARY: yyyyMMdd_log.jlog 檔案較小 寫入也較快 需使用 BinaryLogReader 轉成文字
+     */
+    public enum LogFormat {
+        TEXT(".txt"),
+        BINARY(BinaryLogReader.FILE_EXTENSION);
+
+        private final String extension;
+
+        LogFormat(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /**
+     * log 檔案的輪替與保留規則 需要透過 setRollingPolicy() 開啟 LogUtils 預設不輪替
+     * new RollingPolicy() 的預設值為單檔 5MB 最多保留 30 個檔案且總大小不超過 50MB 並壓縮舊的檔案
+     * 開啟後 log 目錄中既有的 yyyyMMdd_log.txt 也會被壓縮成 .gz 或依規則刪除
+     * 所有數值設為 0 代表不限制
+     * 例如: LogUtils.setRollingPolicy(new LogUtils.RollingPolicy().setMaxFileBytes(1024 * 1024))
+     */
+    public static class RollingPolicy {
+        private long maxFileBytes = 5 * 1024 * 1024;
+        private int maxFileCount = 30;
+        private long maxTotalBytes = 50 * 1024 * 1024;
+        private boolean isCompressEnabled = true;
+
+        /**
+         * 單一檔案超過此大小時 會改名成 yyyyMMdd_log.N.txt 之後寫入新的檔案
+         *
+         * @param maxFileBytes
+         * @return
+         */
+        public RollingPolicy setMaxFileBytes(long maxFileBytes) {
+            this.maxFileBytes = maxFileBytes;
+            return this;
+        }
+
+        public RollingPolicy setMaxFileCount(int maxFileCount) {
+            this.maxFileCount = maxFileCount;
+            return this;
+        }
+
+        public RollingPolicy setMaxTotalBytes(long maxTotalBytes) {
+            this.maxTotalBytes = maxTotalBytes;
+            return this;
+        }
+
+        /**
+         * 是否將不再寫入的檔案壓縮成 gzip (.gz)
+         *
+         * @param isCompressEnabled
+         * @return
+         */
+        public RollingPolicy setCompressEnabled(boolean isCompressEnabled) {
+            this.isCompressEnabled = isCompressEnabled;
+            return this;
+        }
+
+        public long getMaxFileBytes() {
+            return maxFileBytes;
+        }
+
+        public int getMaxFileCount() {
+            return maxFileCount;
+        }
+
+        public long getMaxTotalBytes() {
+            return maxTotalBytes;
+        }
+
+        public boolean isCompressEnabled() {
+            return isCompressEnabled;
+        }
+    }
+
+    /**
+     * 只保留還沒寫入檔案的 log 寫入時以附加 (append) 的方式寫在檔案後面
+     * 因此不論當天的 log 檔有多大 每次寫入的成本與佔用的記憶體都只跟 maxLogsInBuffer 有關
+     * log 會在 flush() 時才依 LogFormat 轉成文字或二進位格式
+     */
     private static class LogBuffer {
-        private StringBuilder cacheLog;
-        private int currentLogSize;
+        private ArrayList<LogRecord> pendingRecords;
+        private String pendingLogDate;
+        private File logFile;
+        private long logFileSize;
+        private FileOutputStream logStream;
+        private LogFormat openedLogFormat;
+        private BinaryLogWriter binaryLogWriter;
+        private ByteArrayOutputStream encodeBuffer;
+        private LogJournal journal;
 
         private LogBuffer() {
-            cacheLog = null;
-            currentLogSize = 0;
+            pendingRecords = new ArrayList<>();
+            pendingLogDate = null;
+            encodeBuffer = new ByteArrayOutputStream();
+        }
+
+        /**
+         * 宣告成 synchrinized 保護多線程同時要執行的問題
+         *
+         * @param record
+         */
+        public synchronized void addNewLog(LogRecord record) {
+            String nowDate = TimeUtils.getDateFormat(LOG_DATE_FORMAT, record.timestamp);
+            if (pendingLogDate != null && !pendingLogDate.equals(nowDate)) {
+                //上一筆 log 的日期跟這筆不一樣 進入換日了 要先把前一天還沒寫入的 log 寫進前一天的檔案
+                flush();
+            }
+            pendingLogDate = nowDate;
+
+            //將 log 加進緩存 有開啟 journal 時同時記錄到 mmap 檔案 app 崩潰後仍可取回
+            if (journal != null) {
+                journal.append(record.timestamp, record.level, record.tag, record.log);
+            }
+            pendingRecords.add(record);
+            LogConfig config = logConfig;
+            if (pendingRecords.size() >= (config != null ? config.maxLogsInBuffer : maxLogsInBuffer)) {
+                flush();
+            }
+        }
+
+        /**
+         * 將緩存中的 log 附加到對應日期的檔案後面 並清空緩存
+         * 檔案會保持開啟 直到換日 寫入的目錄或格式改變時才關閉
+         */
+        public synchronized void flush() {
+            if (pendingRecords.isEmpty() || pendingLogDate == null) {
+                return;
+            }
+            long startNanos = System.nanoTime();
+            boolean isWritten = false;
+            LogFormat format = logFormat;
+            File targetFile = getLogFile(pendingLogDate + LOG_FILE_NAME_INFIX + format.extension);
+            try {
+                if (targetFile == null) {
+                    LogUtils.onlyLogW(TAG, "flush() failed: log directory is null");
+                    return;
+                }
+                if (logStream == null || !targetFile.equals(logFile)) {
+                    boolean isFileChanged = logFile != null && !targetFile.equals(logFile);
+                    close();
+                    File directory = targetFile.getParentFile();
+                    if (!directory.isDirectory() && !directory.mkdirs()) {
+                        LogUtils.onlyLogW(TAG, "flush() failed: directory can not be created, directoryPath: "
+                                + directory.getAbsolutePath());
+                        return;
+                    }
+                    logStream = new FileOutputStream(targetFile, true);
+                    logFile = targetFile;
+                    logFileSize = targetFile.length();
+                    openedLogFormat = format;
+                    //二進位格式每次開啟檔案都重新寫一個檔頭 並重新編號 tag
+                    binaryLogWriter = format == LogFormat.BINARY ? new BinaryLogWriter() : null;
+                    if (isFileChanged) {
+                        //換日了 前一天的檔案不會再寫入 可以壓縮
+                        scheduleLogMaintenance();
+                    }
+                }
+                encodeBuffer.reset();
+                encode(encodeBuffer);
+                encodeBuffer.writeTo(logStream);
+                logStream.flush();
+                if (journal != null) {
+                    journal.markCommitted();
+                }
+                isWritten = true;
+                logFileSize += encodeBuffer.size();
+                RollingPolicy policy = rollingPolicy;
+                if (policy != null && policy.getMaxFileBytes() > 0 && logFileSize >= policy.getMaxFileBytes()) {
+                    close();
+                    LogFileRoller.rollFile(targetFile, pendingLogDate + LOG_FILE_NAME_INFIX, format.extension);
+                    scheduleLogMaintenance();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                File failedFile = logFile;
+                long validFileSize = logFileSize;
+                close();
+                if (!isWritten) {
+                    truncateLogFile(failedFile, validFileSize);
+                }
+            } finally {
+                if (isWritten) {
+                    writtenLogCount.addAndGet(pendingRecords.size());
+                    writtenLogBytes.addAndGet(encodeBuffer.size());
+                } else {
+                    droppedLogCount.addAndGet(pendingRecords.size());
+                }
+                flushLatency.record(System.nanoTime() - startNanos);
+                //寫入失敗時也直接捨棄 避免緩存無限制的成長
+                pendingRecords.clear();
+                if (encodeBuffer.size() > ENCODE_BUFFER_TRIM_SIZE) {
+                    encodeBuffer = new ByteArrayOutputStream();
+                }
+            }
+        }
+
+        /**
+         * 寫入失敗 (例如磁碟空間不足) 時檔案結尾可能留下不完整的 log
+         * 下次以附加的方式開啟前 先將檔案截回寫入前的大小 避免接在後面的內容無法讀取
+         *
+         * @param file
+         * @param validFileSize
+         */
+        private static void truncateLogFile(File file, long validFileSize) {
+            if (file == null || file.length() <= validFileSize) {
+                return;
+            }
+            RandomAccessFile randomAccessFile = null;
+            try {
+                randomAccessFile = new RandomAccessFile(file, "rw");
+                randomAccessFile.setLength(validFileSize);
+            } catch (IOException e) {
+                e.printStackTrace();
+                LogUtils.onlyLogW(TAG, "truncateLogFile() failed: " + e.getMessage() + ", filePath: "
+                        + file.getAbsolutePath());
+            } finally {
+                if (randomAccessFile != null) {
+                    try {
+                        randomAccessFile.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        private void encode(ByteArrayOutputStream out) throws IOException {
+            if (openedLogFormat == LogFormat.BINARY) {
+                for (LogRecord record : pendingRecords) {
+                    binaryLogWriter.writeRecord(out, record.timestamp, record.level, record.tag, record.log);
+                }
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (LogRecord record : pendingRecords) {
+                TimeUtils.appendDateFormat(sb, LOG_TIME_PREFIX_FORMAT, record.timestamp);
+                sb.append(logRanks[record.level])
+                        .append(record.tag)
+                        .append(NEW_LINE)
+                        .append(record.log)
+                        .append(NEW_LINE);
+            }
+            out.write(sb.toString().getBytes());
+        }
+
+        private synchronized void close() {
+            if (logStream != null) {
+                try {
+                    logStream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            logStream = null;
+            logFile = null;
+            logFileSize = 0;
+            openedLogFormat = null;
+            binaryLogWriter = null;
+        }
+
+        private synchronized String getLogFileName() {
+            return logFile == null ? null : logFile.getName();
+        }
+
+        /**
+         * 開啟新的 journal 已經開啟時先把緩存寫入檔案再關閉舊的
+         *
+         * @param journalFile
+         * @param journalBytes
+         * @return
+         */
+        private synchronized boolean openJournal(File journalFile, int journalBytes) {
+            closeJournal(journalFile);
+            //緩存中已有的 log 沒有記錄在 journal 中 先寫入檔案
+            flush();
+            journal = LogJournal.create(journalFile, journalBytes);
+            return journal != null;
+        }
+
+        private synchronized void closeJournal(File journalFile) {
+            if (journal == null) {
+                return;
+            }
+            flush();
+            journal.close();
+            journal = null;
+            if (journalFile.exists()) {
+                FileUtils.deleteOneFile(journalFile);
+            }
+        }
+
+        private synchronized boolean hasJournal() {
+            return journal != null;
+        }
+
+        /**
+         * 將上次執行時沒寫入的 log 寫回對應日期的檔案
+         *
+         * @param records
+         */
+        private synchronized void addRecoveredLogs(ArrayList<LogEntry> records) {
+            for (LogEntry record : records) {
+                addNewLog(new LogRecord(record.getTimestamp(), record.getTag(), record.getMessage(), record.getLevel()));
+            }
+            flush();
+        }
+    }
+
+    /**
+     * 非同步模式 呼叫端只把 log 放進 LogRingBuffer 就返回 不需要拿 lock 也不需要格式化日期
+     * 由背景執行緒一次取出多筆 交給 LogBuffer 格式化並寫入檔案
+     * 佇列空閒超過 FLUSH_INTERVAL_NANOS 時 會把緩存中的 log 寫入檔案
+     */
+    private static class AsyncLogWriter implements Runnable {
+        private static final long FLUSH_INTERVAL_NANOS = 1000L * 1000 * 1000;
+        private static final int SAMPLE_INTERVAL = 10;
+        private final LogRingBuffer<LogRecord> ringBuffer;
+        private final OverflowPolicy overflowPolicy;
+        private final AtomicLong droppedCount = new AtomicLong();
+        private final AtomicLong sampleCounter = new AtomicLong();
+        private final Thread consumerThread;
+        private volatile boolean isRunning = true;
+        private volatile boolean isConsumerParked = false;
+        private volatile boolean isFlushRequested = false;
+
+        private AsyncLogWriter(int capacity, OverflowPolicy overflowPolicy) {
+            this.ringBuffer = new LogRingBuffer<>(capacity);
+            this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.DROP : overflowPolicy;
+            consumerThread = new Thread(this, "LogUtils-writer");
+            consumerThread.setDaemon(true);
+            consumerThread.start();
+        }
+
+        private void enqueue(String tag, String log, int printType) {
+            LogRecord record = new LogRecord(System.currentTimeMillis(), tag, log, printType);
+            if (overflowPolicy == OverflowPolicy.SAMPLE && printType < WARN
+                    && ringBuffer.size() >= ringBuffer.capacity() * 3 / 4
+                    && sampleCounter.incrementAndGet() % SAMPLE_INTERVAL != 0) {
+                droppedCount.incrementAndGet();
+                droppedLogCount.incrementAndGet();
+                return;
+            }
+            //只有佇列滿了需要等待時才計時 不增加一般情況的成本
+            boolean isBlocked = false;
+            long blockedStartNanos = 0;
+            while (!ringBuffer.offer(record)) {
+                if (overflowPolicy != OverflowPolicy.BLOCK || Thread.currentThread() == consumerThread || !isRunning) {
+                    droppedCount.incrementAndGet();
+                    droppedLogCount.incrementAndGet();
+                    if (isBlocked) {
+                        blockedLatency.record(System.nanoTime() - blockedStartNanos);
+                    }
+                    return;
+                }
+                if (!isBlocked) {
+                    isBlocked = true;
+                    blockedStartNanos = System.nanoTime();
+                }
+                LockSupport.unpark(consumerThread);
+                LockSupport.parkNanos(100 * 1000);
+            }
+            if (isBlocked) {
+                blockedLatency.record(System.nanoTime() - blockedStartNanos);
+            }
+            if (isConsumerParked) {
+                LockSupport.unpark(consumerThread);
+            }
+        }
+
+        private void requestFlush() {
+            isFlushRequested = true;
+            LockSupport.unpark(consumerThread);
+        }
+
+        @Override
+        public void run() {
+            while (isRunning) {
+                if (drain() > 0) {
+                    continue;
+                }
+                if (isFlushRequested) {
+                    isFlushRequested = false;
+                    logBuffer.flush();
+                    continue;
+                }
+                isConsumerParked = true;
+                //設定旗標後再確認一次 避免錯過 park 前剛放進來的 log
+                if (ringBuffer.size() == 0 && !isFlushRequested && isRunning) {
+                    long parkStart = System.nanoTime();
+                    LockSupport.parkNanos(FLUSH_INTERVAL_NANOS);
+                    if (System.nanoTime() - parkStart >= FLUSH_INTERVAL_NANOS) {
+                        logBuffer.flush();
+                    }
+                }
+                isConsumerParked = false;
+            }
+            drain();
+            logBuffer.flush();
+        }
+
+        private int drain() {
+            int count = 0;
+            LogRecord record;
+            while ((record = ringBuffer.poll()) != null) {
+                addToLogBuffer(record);
+                count++;
+            }
+            return count;
+        }
+
+        private void shutdown() {
+            isRunning = false;
+            LockSupport.unpark(consumerThread);
+            try {
+                consumerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 一筆 log 的內容 建立後不會再改變 可以同時交給多個 LogSinkDispatcher
+     */
+    static class LogRecord {
+        final long timestamp;
+        final String tag;
+        final String log;
+        final int level;
+
+        LogRecord(long timestamp, String tag, String log, int level) {
+            this.timestamp = timestamp;
+            this.tag = tag;
+            this.log = log;
+            this.level = level;
+        }
+    }
+
+
+    public static void prepare(Context context) {
+        if (context == null) {
+            LogUtils.e(TAG, "prepare() failed: context is null");
+            throw new NullPointerException("prepare() error: context is null");
+        }
+        appContext = context.getApplicationContext();
+        File externalFilesDir = FileUtils.getDir(FileUtils.DirKind.EXTERNAL__FILES_DIR, appContext, null);
+        externalLogDirectory = externalFilesDir != null ? new File(externalFilesDir.getParentFile(), LOG_DIRECTORY_NAME) : null;
+        File innerFilesDir = FileUtils.getDir(FileUtils.DirKind.FILES_DIR, appContext, null);
+        innerLogDirectory = innerFilesDir != null ? new File(innerFilesDir.getParentFile(), LOG_DIRECTORY_NAME) : null;
+        SharedPreferences sp = PreferenceUtils.getPreference(appContext, LOG_CONFIG);
+        if (sp != null) {
+            synchronized (LogUtils.class) {
+                if (logConfigListener == null) {
+                    logConfigListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                        @Override
+                        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                            refreshLogConfig();
+                        }
+                    };
+                    sp.registerOnSharedPreferenceChangeListener(logConfigListener);
+                }
+            }
+        }
+        refreshLogConfig();
+        recoverLogJournal();
+        scheduleLogMaintenance();
+    }
+
+    /**
+     * 開啟崩潰保護模式 還沒寫入檔案的 log 會同時記錄在內部儲存空間的 mmap 檔案中
+     * app 被強制結束或崩潰時 下次 prepare() 會將這些 log 補寫回 log 檔案
+     * 每筆 log 只多一次記憶體複製 不需要每筆都寫入磁碟 非同步模式下還在佇列中的 log 不受保護
+     *
+     * @param journalBytes journal 檔案的大小 寫滿時從頭覆蓋最舊的 log
+     * @return
+     */
+    public static boolean enableCrashSafeLogging(int journalBytes) {
+        if (!isPrepared()) {
+            throw new NotPreparedException();
+        }
+        if (innerLogDirectory == null) {
+            LogUtils.w(TAG, "enableCrashSafeLogging() failed: innerLogDirectory is null");
+            return false;
+        }
+        if (!innerLogDirectory.isDirectory() && !innerLogDirectory.mkdirs()) {
+            LogUtils.w(TAG, "enableCrashSafeLogging() failed: directory can not be created, directoryPath: "
+                    + innerLogDirectory.getAbsolutePath());
+            return false;
+        }
+        if (!logBuffer.openJournal(new File(innerLogDirectory, LOG_JOURNAL_FILE_NAME),
+                journalBytes > 0 ? journalBytes : DEFAULT_JOURNAL_BYTES)) {
+            LogUtils.w(TAG, "enableCrashSafeLogging() failed: journal can not be created");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 關閉崩潰保護模式 會先把緩存中的 log 寫入檔案 再刪除 journal 檔案
+     */
+    public static void disableCrashSafeLogging() {
+        if (innerLogDirectory == null) {
+            return;
+        }
+        logBuffer.closeJournal(new File(innerLogDirectory, LOG_JOURNAL_FILE_NAME));
+    }
+
+    public static boolean isCrashSafeLogging() {
+        return logBuffer.hasJournal();
+    }
+
+    /**
+     * 上次執行留下 journal 檔案時 代表有 log 可能還沒寫入檔案 取回後寫入並刪除 journal
+     * 本次執行已經開啟 journal 時 (重複呼叫 prepare()) 不需要處理
+     */
+    private static void recoverLogJournal() {
+        if (innerLogDirectory == null || logBuffer.hasJournal()) {
+            return;
+        }
+        File journalFile = new File(innerLogDirectory, LOG_JOURNAL_FILE_NAME);
+        if (!journalFile.exists()) {
+            return;
+        }
+        ArrayList<LogEntry> records = LogJournal.readUncommitted(journalFile);
+        if (records != null && !records.isEmpty()) {
+            logBuffer.addRecoveredLogs(records);
+            LogUtils.onlyLogI(TAG, "recoverLogJournal(): " + records.size() + " logs recovered");
+        }
+        FileUtils.deleteOneFile(journalFile);
+    }
+
+    /**
+     * 設定寫入檔案的格式 新的格式會在下一次寫入時生效 並寫到對應副檔名的檔案
+     *
+     * @param format
+     */
+    public static void setLogFormat(LogFormat format) {
+        if (format == null) {
+            LogUtils.w(TAG, "setLogFormat() failed: format is null");
+            return;
+        }
+        logFormat = format;
+    }
+
+    public static LogFormat getLogFormat() {
+        return logFormat;
+    }
+
+    /**
+     * 設定 log 檔案的輪替與保留規則 傳入 null (預設) 代表不輪替 也不刪除任何舊的檔案
+     *
+     * @param policy
+     */
+    public static void setRollingPolicy(RollingPolicy policy) {
+        rollingPolicy = policy;
+        scheduleLogMaintenance();
+    }
+
+    public static RollingPolicy getRollingPolicy() {
+        return rollingPolicy;
+    }
+
+    /**
+     * 在背景壓縮舊的 log 檔案 並刪除超過保留上限的檔案
+     */
+    private static void scheduleLogMaintenance() {
+        RollingPolicy policy = rollingPolicy;
+        if (policy == null || !isPrepared()) {
+            return;
+        }
+        HashSet<String> activeFileNames = new HashSet<>();
+        String nowDate = TimeUtils.getDateFormat(LOG_DATE_FORMAT, System.currentTimeMillis());
+        for (LogFormat format : LogFormat.values()) {
+            activeFileNames.add(nowDate + LOG_FILE_NAME_INFIX + format.extension);
+        }
+        String openedFileName = logBuffer.getLogFileName();
+        if (openedFileName != null) {
+            activeFileNames.add(openedFileName);
+        }
+        String[] extensions = new String[LogFormat.values().length];
+        for (int i = 0; i < extensions.length; i++) {
+            extensions[i] = LogFormat.values()[i].extension;
+        }
+        LogFileRoller.scheduleMaintenance(new File[]{externalLogDirectory, innerLogDirectory}, activeFileNames,
+                extensions, policy.isCompressEnabled(), policy.getMaxFileCount(), policy.getMaxTotalBytes());
+    }
+
+    /**
+     * 重新從 SharedPreferences 讀取設定 產生新的快照
+     * sp 無法取得時快照為 null 之後寫 log 時會拋出例外
+     */
+    private static synchronized void refreshLogConfig() {
+        if (!isPrepared()) {
+            return;
+        }
+        SharedPreferences sp = PreferenceUtils.getPreference(appContext, LOG_CONFIG);
+        if (sp == null) {
+            logConfig = null;
+            return;
+        }
+        logConfig = new LogConfig(sp.getBoolean(ENABLE_LOG_TO_FILE, false),
+                sp.getInt(MIN_FILE_LOG_LEVEL, VERBOSE), maxLogsInBuffer);
+    }
+
+    /**
+     * 快照還沒建立時才會進來 依照原本的規則 沒有 prepare() 或 sp 無法取得時拋出例外
+     *
+     * @return
+     */
+    private static LogConfig requireLogConfig() {
+        if (!isPrepared()) {
+            throw new NotPreparedException();
+        }
+        refreshLogConfig();
+        LogConfig config = logConfig;
+        if (config == null) {
+            LogUtils.onlyLogE(TAG, "requireLogConfig() failed: sp is null");
+            NullPointerException e = new NullPointerException("isEnableLogToFile() error: sp is null");
+            e.printStackTrace();
+            throw e;
+        }
+        return config;
+    }
+
+    public static boolean isPrepared() {
+        return appContext != null;
+    }
+
+    public static void setMaxLogsInBuffer(int maxBufferNumber) {
+        if (maxBufferNumber > 0) {
+            maxLogsInBuffer = maxBufferNumber;
+            refreshLogConfig();
+        }
+    }
+
+    /**
+     * 設定寫入檔案的最低等級 (VERBOSE ~ ERROR) 低於此等級的 log 只會輸出到 logcat
+     * 與 enableLogToFile() 相同 設定會保存在 SharedPreferences 中
+     *
+     * @param level
+     * @return
+     */
+    public static boolean setMinFileLogLevel(int level) {
+        if (!isPrepared()) {
+            throw new NotPreparedException();
+        }
+        if (level < VERBOSE || level > ERROR) {
+            LogUtils.w(TAG, "setMinFileLogLevel(" + level + ") failed: invalid level");
+            return false;
+        }
+        SharedPreferences sp = PreferenceUtils.getPreference(appContext, LOG_CONFIG);
+        if (sp == null) {
+            LogUtils.w(TAG, "setMinFileLogLevel(" + level + ") failed: sp is null");
+            return false;
+        }
+        if (!sp.edit().putInt(MIN_FILE_LOG_LEVEL, level).commit()) {
+            LogUtils.w(TAG, "setMinFileLogLevel(" + level + ") failed: commit failed");
+            return false;
+        }
+        refreshLogConfig();
+        return true;
+    }
+
+    private static String getTag(Object caller) {
+        if (caller != null) {
+            //caller 是 String ，代表外部傳進來的 TAG 是一般的 String，而不是物件參照。
+            return caller instanceof String ? (String) caller : caller.getClass().getName();
+        }
+        return TAG;
+    }
+
+    /**
+     * 延遲產生 log 訊息用 傳給 lazyLogV() ~ lazyLogE() 只有在該等級會被輸出時才會呼叫 getMessage()
+     */
+    public interface MessageSupplier {
+        String getMessage();
+    }
+
+    /**
+     * 設定全域的最低等級 (VERBOSE ~ ERROR) 低於此等級的 log 不會輸出到 logcat 也不會寫入檔案
+     * 有用 setTagMinLogLevel() 設定的 tag 以該 tag 的設定為準
+     *
+     * @param level
+     */
+    public static void setMinLogLevel(int level) {
+        if (level < VERBOSE || level > ERROR) {
+            LogUtils.w(TAG, "setMinLogLevel(" + level + ") failed: invalid level");
+            return;
+        }
+        minLogLevel = level;
+    }
+
+    public static int getMinLogLevel() {
+        return minLogLevel;
+    }
+
+    /**
+     * 針對單一 tag 設定最低等級 tag 為 caller 的類別名稱 或外部傳進來的 String TAG
+     *
+     * @param tag
+     * @param level
+     */
+    public static void setTagMinLogLevel(String tag, int level) {
+        if (tag == null || level < VERBOSE || level > ERROR) {
+            LogUtils.w(TAG, "setTagMinLogLevel() failed: invalid tag or level");
+            return;
+        }
+        tagMinLogLevels.put(tag, level);
+        hasTagMinLogLevels = true;
+    }
+
+    public static void clearTagMinLogLevel(String tag) {
+        if (tag == null) {
+            return;
+        }
+        tagMinLogLevels.remove(tag);
+        hasTagMinLogLevels = !tagMinLogLevels.isEmpty();
+    }
+
+    /**
+     * 回傳該等級的 log 是否會被輸出 在迴圈中組合複雜的訊息前 可以先用此方法判斷
+     * 例如: if (LogUtils.isLoggable(this, LogUtils.DEBUG)) { LogUtils.d(this, buildDebugInfo()); }
+     *
+     * @param caller
+     * @param level
+     * @return
+     */
+    public static boolean isLoggable(Object caller, int level) {
+        return isLoggableTag(getTag(caller), level);
+    }
+
+    private static boolean isLoggableTag(String tag, int level) {
+        if (hasTagMinLogLevels) {
+            Integer tagLevel = tagMinLogLevels.get(tag);
+            if (tagLevel != null) {
+                return level >= tagLevel;
+            }
+        }
+        return level >= minLogLevel;
+    }
+
+    private static String formatMessage(String format, Object... args) {
+        if (format == null || args == null || args.length == 0) {
+            return format;
+        }
+        try {
+            return String.format(Locale.US, format, args);
+        } catch (IllegalArgumentException e) {
+            //格式錯誤時不要讓呼叫端崩潰 直接輸出原始的 format
+            return format;
+        }
+    }
+
+    /**
+     * @param caller
+     * @param msg
+     * @param printType
+     * @param checkNeedWriteFile 此參數若為 true， 會檢查是否須將 log 寫入檔案進行儲存。
+     */
+    private static void printLog(Object caller, String msg, int printType, boolean checkNeedWriteFile) {
+        String tag = getTag(caller);
+        if (!isLoggableTag(tag, printType)) {
+            return;
+        }
+        loggedCounts.incrementAndGet(printType);
+        if (isLogcatEnabled) {
+            switch (printType) {
+                case 1:
+                    Log.v(tag, msg);
+                    break;
+                case 2:
+                    Log.d(tag, msg);
+                    break;
+                case 3:
+                    Log.i(tag, msg);
+                    break;
+                case 4:
+                    Log.w(tag, msg);
+                    break;
+                case 5:
+                    Log.e(tag, msg);
+                    break;
+            }
+        }
+        if (!checkNeedWriteFile) {
+            return;
+        }
+        LogSinkDispatcher[] dispatchers = sinkDispatchers;
+        if (dispatchers.length > 0) {
+            //同一個 LogRecord 交給所有 sink 各自的佇列 佇列滿了由各自的 dispatcher 計數
+            LogRecord record = new LogRecord(System.currentTimeMillis(), tag, msg, printType);
+            for (LogSinkDispatcher dispatcher : dispatchers) {
+                dispatcher.offer(record);
+            }
         }
-
-        /**
-         * 宣告成 synchrinized 保護多線程同時要執行的問題
-         *
-         * @param tag
-         * @param log
-         */
-        public synchronized void addNewLog(String tag, String log, String logRank) {
-            long nowTimestamp = System.currentTimeMillis();
-            String nowDate = TimeUtils.getDateFormat(LOG_DATE_FORMAT, nowTimestamp);
-
-            if (cacheLog == null) {
-                //會進入這邊就是第一次開 app
-                String targetFileName = nowDate + LOG_FILE_NAME_POSTFIX;
-                String oldLogs = readLogFromFile(targetFileName); //第一次開 app 需要把之前的 log 讀回來
-                cacheLog = new StringBuilder(oldLogs);
-                lastLogDate = nowDate;
+        LogConfig config = logConfig;
+        if (config == null) {
+            config = requireLogConfig();
+        }
+        if (config.isLogToFileEnabled && printType >= config.minFileLogLevel) {
+            // 將新的 log 加到 buffer 並當滿足以下條件時呼叫 flush 附加到檔案後面
+            // 1. 當發現日期變更時
+            // 2. 當log 數抵達 maxLogsInBuffer (上限可調整)
+            AsyncLogWriter writer = asyncLogWriter;
+            if (writer != null) {
+                writer.enqueue(tag, msg, printType);
             } else {
-                if (!lastLogDate.equals(nowDate)) {
-                    //上一筆 log 的日期跟這筆不一樣 進入換日了 要換新的檔案 要先把之前的 cacheLog 寫進檔案
-                    //將 cacheLog 寫入檔案 並 reset logBuffer
-                    String targetFileName = lastLogDate + LOG_FILE_NAME_POSTFIX;
-                    writeLogToFile(targetFileName, cacheLog.toString());
-
-                    //對 cacheLog 初始化 因為進入換日了 需要一個新的乾淨的緩存來放新的日期的 log
-                    cacheLog = new StringBuilder();
-                    currentLogSize = 0;
-                    lastLogDate = nowDate;
-                }
-            }
-
-            //將 log 資訊加進緩存 並讓 counter + 1
-            cacheLog.append(TimeUtils.getDateFormat(LOG_TIME_PREFIX_FORMAT, nowTimestamp))
-                    .append(logRank)
-                    .append(tag)
-                    .append(NEW_LINE)
-                    .append(log)
-                    .append(NEW_LINE);
-            currentLogSize++;
-            if (currentLogSize >= maxLogsInBuffer) {
-                //將 cacheLog 寫入檔案 並清空 counter
-                String targetFileName = nowDate + LOG_FILE_NAME_POSTFIX;
-                writeLogToFile(targetFileName, cacheLog.toString());
-                currentLogSize = 0;
+                addToLogBuffer(new LogRecord(System.currentTimeMillis(), tag, msg, printType));
             }
         }
     }
 
+    private static void addToLogBuffer(LogRecord record) {
+        long startNanos = System.nanoTime();
+        logBuffer.addNewLog(record);
+        addLogLatency.record(System.nanoTime() - startNanos);
+    }
 
-    public static void prepare(Context context) {
-        if (context == null) {
-            LogUtils.e(TAG, "prepare() failed: context is null");
-            throw new NullPointerException("prepare() error: context is null");
+    /**
+     * 回傳目前的統計快照 可以定期輸出 或在 benchmark 前後比較
+     *
+     * @return
+     */
+    public static LogStatistics getLogStatistics() {
+        long[] counts = new long[loggedCounts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = loggedCounts.get(i);
         }
-        appContext = context.getApplicationContext();
-        File externalFilesDir = FileUtils.getDir(FileUtils.DirKind.EXTERNAL__FILES_DIR, appContext, null);
-        externalLogDirectory = externalFilesDir != null ? new File(externalFilesDir.getParentFile(), LOG_DIRECTORY_NAME) : null;
-        File innerFilesDir = FileUtils.getDir(FileUtils.DirKind.FILES_DIR, appContext, null);
-        innerLogDirectory = innerFilesDir != null ? new File(innerFilesDir.getParentFile(), LOG_DIRECTORY_NAME) : null;
+        long sinkDroppedCount = 0;
+        for (LogSinkDispatcher dispatcher : sinkDispatchers) {
+            sinkDroppedCount += dispatcher.getDroppedCount();
+        }
+        return new LogStatistics(statisticsStartTime, System.currentTimeMillis(), counts, droppedLogCount.get(),
+                sinkDroppedCount, writtenLogCount.get(), writtenLogBytes.get(), flushLatency.snapshot(),
+                addLogLatency.snapshot(), blockedLatency.snapshot());
     }
 
-    public static boolean isPrepared() {
-        return appContext != null;
+    /**
+     * 將所有統計歸零
+     * getDroppedLogCount() 是目前非同步模式的計數 不受影響 請參考 getDroppedLogCount() 的說明
+     */
+    public static void resetLogStatistics() {
+        for (int i = 0; i < loggedCounts.length(); i++) {
+            loggedCounts.set(i, 0);
+        }
+        droppedLogCount.set(0);
+        writtenLogCount.set(0);
+        writtenLogBytes.set(0);
+        flushLatency.reset();
+        addLogLatency.reset();
+        blockedLatency.reset();
+        for (LogSinkDispatcher dispatcher : sinkDispatchers) {
+            dispatcher.resetDroppedCount();
+        }
+        statisticsStartTime = System.currentTimeMillis();
     }
 
-    public static void setMaxLogsInBuffer(int maxBufferNumber) {
-        if (maxBufferNumber > 0) {
-            maxLogsInBuffer = maxBufferNumber;
+    /**
+     * 開啟非同步寫入 log 檔案的模式 開啟後 v d i w e 只會把 log 放進佇列 由背景執行緒負責寫入檔案
+     * 適合在 UI 執行緒頻繁寫 log 的情境 已經開啟時會先關閉舊的再重新開啟
+     *
+     * @param capacity       佇列容量 會調整成 2 的次方
+     * @param overflowPolicy 佇列滿了的處理方式 null 時為 DROP
+     */
+    public static synchronized void enableAsyncLogging(int capacity, OverflowPolicy overflowPolicy) {
+        disableAsyncLogging();
+        asyncLogWriter = new AsyncLogWriter(capacity > 0 ? capacity : DEFAULT_ASYNC_CAPACITY, overflowPolicy);
+    }
+
+    /**
+     * 關閉非同步模式 會等背景執行緒把佇列中的 log 寫完才返回
+     */
+    public static synchronized void disableAsyncLogging() {
+        AsyncLogWriter writer = asyncLogWriter;
+        if (writer == null) {
+            return;
         }
+        asyncLogWriter = null;
+        writer.shutdown();
+    }
+
+    public static boolean isAsyncLogging() {
+        return asyncLogWriter != null;
     }
 
     /**
-     * @param caller
-     * @param msg
-     * @param printType
-     * @param checkNeedWriteFile 此參數若為 true， 會檢查是否須將 log 寫入檔案進行儲存。
+     * 目前的非同步模式 (從 enableAsyncLogging() 開始) 因為佇列滿了或取樣而被捨棄的 log 數量
+     * 重新開啟非同步模式時歸零 不受 resetLogStatistics() 影響 未開啟非同步模式時回傳 0
+     * 包含寫入檔案失敗在內的所有被捨棄的數量 請使用 getLogStatistics().getDroppedCount()
+     *
+     * @return
      */
-    private static void printLog(Object caller, String msg, int printType, boolean checkNeedWriteFile) {
-        String tag;
-        if (caller != null) {
-            //caller 是 String ，代表外部傳進來的 TAG 是一般的 String，而不是物件參照。
-            tag = caller instanceof String ? (String) caller : caller.getClass().getName();
+    public static long getDroppedLogCount() {
+        AsyncLogWriter writer = asyncLogWriter;
+        return writer == null ? 0 : writer.droppedCount.get();
+    }
+
+    /**
+     * 此方法會將緩存中還沒寫入的 log 強制立即寫入檔案
+     * 非同步模式下則是通知背景執行緒盡快把佇列與緩存中的 log 寫入 不會等待寫入完成
+     */
+    public static void flushLog() {
+        AsyncLogWriter writer = asyncLogWriter;
+        if (writer != null) {
+            writer.requestFlush();
         } else {
-            tag = TAG;
-        }
-        switch (printType) {
-            case 1:
-                Log.v(tag, msg);
-                break;
-            case 2:
-                Log.d(tag, msg);
-                break;
-            case 3:
-                Log.i(tag, msg);
-                break;
-            case 4:
-                Log.w(tag, msg);
-                break;
-            case 5:
-                Log.e(tag, msg);
-                break;
-        }
-        if (checkNeedWriteFile && isEnableLogToFile()) {
-            // 將新的 log 加到 buffer 並當滿足以下條件時呼叫 writeLogToFile 進行寫入
-            // 1. 當發現日期變更時
-            // 2. 當log 數抵達 maxLogsInBuffer (上限可調整)
-            logBuffer.addNewLog(tag, msg, logRanks[printType]);
+            logBuffer.flush();
+        }
+        for (LogSinkDispatcher dispatcher : sinkDispatchers) {
+            dispatcher.requestFlush();
         }
     }
 
     /**
-     * 此方法會將目前的 cacheLog 強制立即寫入檔案
+     * 新增 log 的輸出目的地 同一個 sink 重複新增時會先移除舊的 再以新的設定重新加入
+     * v d i w e 會同時輸出到 logcat log 檔案 (有開啟時) 與所有的 sink onlyLog 系列的方法只輸出到 logcat
+     *
+     * @param sink
+     * @param options null 時使用預設值
      */
-    public synchronized static void flushLog(){
-        if(logBuffer.cacheLog != null){
-            String nowDate = TimeUtils.getDateFormat(LOG_DATE_FORMAT, System.currentTimeMillis());
-            String targetFileName = nowDate + LOG_FILE_NAME_POSTFIX;
-            writeLogToFile(targetFileName, logBuffer.cacheLog.toString());
-            logBuffer.currentLogSize = 0;
+    public static synchronized void addLogSink(LogSink sink, SinkOptions options) {
+        if (sink == null) {
+            LogUtils.w(TAG, "addLogSink() failed: sink is null");
+            return;
+        }
+        removeLogSink(sink);
+        if (options == null) {
+            options = new SinkOptions();
         }
+        LogSinkDispatcher[] newDispatchers = new LogSinkDispatcher[sinkDispatchers.length + 1];
+        System.arraycopy(sinkDispatchers, 0, newDispatchers, 0, sinkDispatchers.length);
+        newDispatchers[sinkDispatchers.length] = new LogSinkDispatcher(sink, options.minLevel, options.batchSize,
+                options.flushIntervalMillis, options.queueCapacity);
+        sinkDispatchers = newDispatchers;
     }
 
     /**
-     * 此方法將 log 從檔案讀到 cahceLog
+     * 移除 sink 會等佇列中的 log 都交給 sink 並 flush 後才返回
      *
-     * @param fileName
+     * @param sink
      */
-    private static String readLogFromFile(String fileName) {
-        File targetDirectory;
-        if (FileUtils.isExternalReadable() && externalLogDirectory != null) {
-            targetDirectory = externalLogDirectory;
-        } else {
-            targetDirectory = innerLogDirectory;
+    public static synchronized void removeLogSink(LogSink sink) {
+        for (int i = 0; i < sinkDispatchers.length; i++) {
+            LogSinkDispatcher dispatcher = sinkDispatchers[i];
+            if (dispatcher.sink == sink) {
+                LogSinkDispatcher[] newDispatchers = new LogSinkDispatcher[sinkDispatchers.length - 1];
+                System.arraycopy(sinkDispatchers, 0, newDispatchers, 0, i);
+                System.arraycopy(sinkDispatchers, i + 1, newDispatchers, i, sinkDispatchers.length - i - 1);
+                sinkDispatchers = newDispatchers;
+                dispatcher.shutdown();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 這個 sink 因為佇列滿了而被捨棄的 log 數量 從 addLogSink() 或 resetLogStatistics() 開始計算
+     * 沒有加入的 sink 回傳 0
+     *
+     * @param sink
+     * @return
+     */
+    public static long getSinkDroppedCount(LogSink sink) {
+        for (LogSinkDispatcher dispatcher : sinkDispatchers) {
+            if (dispatcher.sink == sink) {
+                return dispatcher.getDroppedCount();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 是否直接在呼叫端輸出到 logcat 預設為 true
+     * 改用 LogcatSink 時設為 false 避免重複輸出
+     *
+     * @param isEnabled
+     */
+    public static void setLogcatEnabled(boolean isEnabled) {
+        isLogcatEnabled = isEnabled;
+    }
+
+    public static boolean isLogcatEnabled() {
+        return isLogcatEnabled;
+    }
+
+    /**
+     * 回傳寫入 log 檔案的 sink 與 enableLogToFile() 寫入相同的檔案 也使用相同的格式與輪替規則
+     * 需要讓檔案有自己的佇列與等級過濾時使用 此時應關閉 enableLogToFile() 避免重複寫入
+     *
+     * @return
+     */
+    public static LogSink getFileLogSink() {
+        return FILE_LOG_SINK;
+    }
+
+    private static class FileLogSink implements LogSink {
+        @Override
+        public void write(long timestamp, int level, String tag, String message) {
+            if (!isPrepared()) {
+                return;
+            }
+            addToLogBuffer(new LogRecord(timestamp, tag, message, level));
+        }
+
+        @Override
+        public void flush() {
+            logBuffer.flush();
         }
-        return FileUtils.readFile(new File(targetDirectory, fileName));
     }
 
     /**
-     * 此方法直接把訊息寫入到檔案
-     * 這邊不再處理是否寫入成功或失敗的問題 理論上都會成功
-     * 若失敗那可能是特殊底層問題我也無法處理 反正還是會有錯誤訊息
+     * 回傳 log 檔案 外部儲存空間可以寫入時放在外部 否則放在內部
      *
      * @param fileName
-     * @param msg
      */
-    private static void writeLogToFile(String fileName, String msg) {
+    private static File getLogFile(String fileName) {
         File targetDirectory;
         if (FileUtils.isExternalWritable() && externalLogDirectory != null) {
             targetDirectory = externalLogDirectory;
         } else {
             targetDirectory = innerLogDirectory;
         }
-        FileUtils.writeFile(targetDirectory, fileName, msg);
+        return targetDirectory == null ? null : new File(targetDirectory, fileName);
     }
 
     public static void v(Object caller, String msg) {
         printLog(caller, msg, VERBOSE, true);
     }
 
+    /**
+     * 只有在 isLoggable() 為 true 時才會呼叫 String.format() 組出訊息
+     * 一到兩個參數時不會建立陣列 但基本型別的參數仍會在呼叫端自動裝箱 (boxing)
+     *
+     * @param caller
+     * @param format
+     * @param arg1
+     */
+    public static void v(Object caller, String format, Object arg1) {
+        if (isLoggable(caller, VERBOSE)) {
+            printLog(caller, formatMessage(format, arg1), VERBOSE, true);
+        }
+    }
+
+    public static void v(Object caller, String format, Object arg1, Object arg2) {
+        if (isLoggable(caller, VERBOSE)) {
+            printLog(caller, formatMessage(format, arg1, arg2), VERBOSE, true);
+        }
+    }
+
+    /**
+     * 三個以上的參數 呼叫端每次都會建立 args 陣列 (即使這個等級不會輸出)
+     * 在頻繁執行的地方請先用 isLoggable() 判斷 或改用 lazyLogV()
+     *
+     * @param caller
+     * @param format
+     * @param args
+     */
+    public static void v(Object caller, String format, Object... args) {
+        if (isLoggable(caller, VERBOSE)) {
+            printLog(caller, formatMessage(format, args), VERBOSE, true);
+        }
+    }
+
+    /**
+     * 只有在 isLoggable() 為 true 時才會呼叫 supplier 取得訊息
+     * 與 v(Object, String) 使用不同的名稱 避免 v(caller, null) 無法判斷要呼叫哪一個
+     *
+     * @param caller
+     * @param supplier
+     */
+    public static void lazyLogV(Object caller, MessageSupplier supplier) {
+        if (supplier != null && isLoggable(caller, VERBOSE)) {
+            printLog(caller, supplier.getMessage(), VERBOSE, true);
+        }
+    }
+
     public static void v(Object caller, int value) {
-        printLog(caller, String.valueOf(value), VERBOSE, true);
+        if (isLoggable(caller, VERBOSE)) {
+            printLog(caller, String.valueOf(value), VERBOSE, true);
+        }
     }
 
     public static void v(Object caller, long value) {
-        printLog(caller, String.valueOf(value), VERBOSE, true);
+        if (isLoggable(caller, VERBOSE)) {
+            printLog(caller, String.valueOf(value), VERBOSE, true);
+        }
     }
 
     public static void v(Object caller, float value) {
-        printLog(caller, String.valueOf(value), VERBOSE, true);
+        if (isLoggable(caller, VERBOSE)) {
+            printLog(caller, String.valueOf(value), VERBOSE, true);
+        }
     }
 
     public static void v(Object caller, double value) {
-        printLog(caller, String.valueOf(value), VERBOSE, true);
+        if (isLoggable(caller, VERBOSE)) {
+            printLog(caller, String.valueOf(value), VERBOSE, true);
+        }
     }
 
     public static void v(Object caller, boolean value) {
-        printLog(caller, String.valueOf(value), VERBOSE, true);
+        if (isLoggable(caller, VERBOSE)) {
+            printLog(caller, String.valueOf(value), VERBOSE, true);
+        }
     }
 
     public static void v(Object caller, char value) {
-        printLog(caller, String.valueOf(value), VERBOSE, true);
+        if (isLoggable(caller, VERBOSE)) {
+            printLog(caller, String.valueOf(value), VERBOSE, true);
+        }
     }
 
     public static void d(Object caller, String msg) {
         printLog(caller, msg, DEBUG, true);
     }
 
+    /**
+     * 只有在 isLoggable() 為 true 時才會呼叫 String.format() 組出訊息
+     * 一到兩個參數時不會建立陣列 但基本型別的參數仍會在呼叫端自動裝箱 (boxing)
+     *
+     * @param caller
+     * @param format
+     * @param arg1
+     */
+    public static void d(Object caller, String format, Object arg1) {
+        if (isLoggable(caller, DEBUG)) {
+            printLog(caller, formatMessage(format, arg1), DEBUG, true);
+        }
+    }
+
+    public static void d(Object caller, String format, Object arg1, Object arg2) {
+        if (isLoggable(caller, DEBUG)) {
+            printLog(caller, formatMessage(format, arg1, arg2), DEBUG, true);
+        }
+    }
+
+    /**
+     * 三個以上的參數 呼叫端每次都會建立 args 陣列 (即使這個等級不會輸出)
+     * 在頻繁執行的地方請先用 isLoggable() 判斷 或改用 lazyLogD()
+     *
+     * @param caller
+     * @param format
+     * @param args
+     */
+    public static void d(Object caller, String format, Object... args) {
+        if (isLoggable(caller, DEBUG)) {
+            printLog(caller, formatMessage(format, args), DEBUG, true);
+        }
+    }
+
+    /**
+     * 只有在 isLoggable() 為 true 時才會呼叫 supplier 取得訊息
+     * 與 d(Object, String) 使用不同的名稱 避免 d(caller, null) 無法判斷要呼叫哪一個
+     *
+     * @param caller
+     * @param supplier
+     */
+    public static void lazyLogD(Object caller, MessageSupplier supplier) {
+        if (supplier != null && isLoggable(caller, DEBUG)) {
+            printLog(caller, supplier.getMessage(), DEBUG, true);
+        }
+    }
+
     public static void d(Object caller, int value) {
-        printLog(caller, String.valueOf(value), DEBUG, true);
+        if (isLoggable(caller, DEBUG)) {
+            printLog(caller, String.valueOf(value), DEBUG, true);
+        }
     }
 
     public static void d(Object caller, long value) {
-        printLog(caller, String.valueOf(value), DEBUG, true);
+        if (isLoggable(caller, DEBUG)) {
+            printLog(caller, String.valueOf(value), DEBUG, true);
+        }
     }
 
     public static void d(Object caller, float value) {
-        printLog(caller, String.valueOf(value), DEBUG, true);
+        if (isLoggable(caller, DEBUG)) {
+            printLog(caller, String.valueOf(value), DEBUG, true);
+        }
     }
 
     public static void d(Object caller, double value) {
-        printLog(caller, String.valueOf(value), DEBUG, true);
+        if (isLoggable(caller, DEBUG)) {
+            printLog(caller, String.valueOf(value), DEBUG, true);
+        }
     }
 
     public static void d(Object caller, boolean value) {
-        printLog(caller, String.valueOf(value), DEBUG, true);
+        if (isLoggable(caller, DEBUG)) {
+            printLog(caller, String.valueOf(value), DEBUG, true);
+        }
     }
 
     public static void d(Object caller, char value) {
-        printLog(caller, String.valueOf(value), DEBUG, true);
+        if (isLoggable(caller, DEBUG)) {
+            printLog(caller, String.valueOf(value), DEBUG, true);
+        }
     }
 
     public static void i(Object caller, String msg) {
         printLog(caller, msg, INFO, true);
     }
 
+    /**
+     * 只有在 isLoggable() 為 true 時才會呼叫 String.format() 組出訊息
+     * 一到兩個參數時不會建立陣列 但基本型別的參數仍會在呼叫端自動裝箱 (boxing)
+     *
+     * @param caller
+     * @param format
+     * @param arg1
+     */
+    public static void i(Object caller, String format, Object arg1) {
+        if (isLoggable(caller, INFO)) {
+            printLog(caller, formatMessage(format, arg1), INFO, true);
+        }
+    }
+
+    public static void i(Object caller, String format, Object arg1, Object arg2) {
+        if (isLoggable(caller, INFO)) {
+            printLog(caller, formatMessage(format, arg1, arg2), INFO, true);
+        }
+    }
+
+    /**
+     * 三個以上的參數 呼叫端每次都會建立 args 陣列 (即使這個等級不會輸出)
+     * 在頻繁執行的地方請先用 isLoggable() 判斷 或改用 lazyLogI()
+     *
+     * @param caller
+     * @param format
+     * @param args
+     */
+    public static void i(Object caller, String format, Object... args) {
+        if (isLoggable(caller, INFO)) {
+            printLog(caller, formatMessage(format, args), INFO, true);
+        }
+    }
+
+    /**
+     * 只有在 isLoggable() 為 true 時才會呼叫 supplier 取得訊息
+     * 與 i(Object, String) 使用不同的名稱 避免 i(caller, null) 無法判斷要呼叫哪一個
+     *
+     * @param caller
+     * @param supplier
+     */
+    public static void lazyLogI(Object caller, MessageSupplier supplier) {
+        if (supplier != null && isLoggable(caller, INFO)) {
+            printLog(caller, supplier.getMessage(), INFO, true);
+        }
+    }
+
     public static void i(Object caller, int value) {
-        printLog(caller, String.valueOf(value), INFO, true);
+        if (isLoggable(caller, INFO)) {
+            printLog(caller, String.valueOf(value), INFO, true);
+        }
     }
 
     public static void i(Object caller, long value) {
-        printLog(caller, String.valueOf(value), INFO, true);
+        if (isLoggable(caller, INFO)) {
+            printLog(caller, String.valueOf(value), INFO, true);
+        }
     }
 
     public static void i(Object caller, float value) {
-        printLog(caller, String.valueOf(value), INFO, true);
+        if (isLoggable(caller, INFO)) {
+            printLog(caller, String.valueOf(value), INFO, true);
+        }
     }
 
     public static void i(Object caller, double value) {
-        printLog(caller, String.valueOf(value), INFO, true);
+        if (isLoggable(caller, INFO)) {
+            printLog(caller, String.valueOf(value), INFO, true);
+        }
     }
 
     public static void i(Object caller, boolean value) {
-        printLog(caller, String.valueOf(value), INFO, true);
+        if (isLoggable(caller, INFO)) {
+            printLog(caller, String.valueOf(value), INFO, true);
+        }
     }
 
     public static void i(Object caller, char value) {
-        printLog(caller, String.valueOf(value), INFO, true);
+        if (isLoggable(caller, INFO)) {
+            printLog(caller, String.valueOf(value), INFO, true);
+        }
     }
 
     public static void w(Object caller, String msg) {
         printLog(caller, msg, WARN, true);
     }
 
+    /**
+     * 只有在 isLoggable() 為 true 時才會呼叫 String.format() 組出訊息
+     * 一到兩個參數時不會建立陣列 但基本型別的參數仍會在呼叫端自動裝箱 (boxing)
+     *
+     * @param caller
+     * @param format
+     * @param arg1
+     */
+    public static void w(Object caller, String format, Object arg1) {
+        if (isLoggable(caller, WARN)) {
+            printLog(caller, formatMessage(format, arg1), WARN, true);
+        }
+    }
+
+    public static void w(Object caller, String format, Object arg1, Object arg2) {
+        if (isLoggable(caller, WARN)) {
+            printLog(caller, formatMessage(format, arg1, arg2), WARN, true);
+        }
+    }
+
+    /**
+     * 三個以上的參數 呼叫端每次都會建立 args 陣列 (即使這個等級不會輸出)
+     * 在頻繁執行的地方請先用 isLoggable() 判斷 或改用 lazyLogW()
+     *
+     * @param caller
+     * @param format
+     * @param args
+     */
+    public static void w(Object caller, String format, Object... args) {
+        if (isLoggable(caller, WARN)) {
+            printLog(caller, formatMessage(format, args), WARN, true);
+        }
+    }
+
+    /**
+     * 只有在 isLoggable() 為 true 時才會呼叫 supplier 取得訊息
+     * 與 w(Object, String) 使用不同的名稱 避免 w(caller, null) 無法判斷要呼叫哪一個
+     *
+     * @param caller
+     * @param supplier
+     */
+    public static void lazyLogW(Object caller, MessageSupplier supplier) {
+        if (supplier != null && isLoggable(caller, WARN)) {
+            printLog(caller, supplier.getMessage(), WARN, true);
+        }
+    }
+
     public static void w(Object caller, int value) {
-        printLog(caller, String.valueOf(value), WARN, true);
+        if (isLoggable(caller, WARN)) {
+            printLog(caller, String.valueOf(value), WARN, true);
+        }
     }
 
     public static void w(Object caller, long value) {
-        printLog(caller, String.valueOf(value), WARN, true);
+        if (isLoggable(caller, WARN)) {
+            printLog(caller, String.valueOf(value), WARN, true);
+        }
     }
 
     public static void w(Object caller, float value) {
-        printLog(caller, String.valueOf(value), WARN, true);
+        if (isLoggable(caller, WARN)) {
+            printLog(caller, String.valueOf(value), WARN, true);
+        }
     }
 
     public static void w(Object caller, double value) {
-        printLog(caller, String.valueOf(value), WARN, true);
+        if (isLoggable(caller, WARN)) {
+            printLog(caller, String.valueOf(value), WARN, true);
+        }
     }
 
     public static void w(Object caller, boolean value) {
-        printLog(caller, String.valueOf(value), WARN, true);
+        if (isLoggable(caller, WARN)) {
+            printLog(caller, String.valueOf(value), WARN, true);
+        }
     }
 
     public static void w(Object caller, char value) {
-        printLog(caller, String.valueOf(value), WARN, true);
+        if (isLoggable(caller, WARN)) {
+            printLog(caller, String.valueOf(value), WARN, true);
+        }
     }
 
     public static void e(Object caller, String msg) {
         printLog(caller, msg, ERROR, true);
     }
 
+    /**
+     * 只有在 isLoggable() 為 true 時才會呼叫 String.format() 組出訊息
+     * 一到兩個參數時不會建立陣列 但基本型別的參數仍會在呼叫端自動裝箱 (boxing)
+     *
+     * @param caller
+     * @param format
+     * @param arg1
+     */
+    public static void e(Object caller, String format, Object arg1) {
+        if (isLoggable(caller, ERROR)) {
+            printLog(caller, formatMessage(format, arg1), ERROR, true);
+        }
+    }
+
+    public static void e(Object caller, String format, Object arg1, Object arg2) {
+        if (isLoggable(caller, ERROR)) {
+            printLog(caller, formatMessage(format, arg1, arg2), ERROR, true);
+        }
+    }
+
+    /**
+     * 三個以上的參數 呼叫端每次都會建立 args 陣列 (即使這個等級不會輸出)
+     * 在頻繁執行的地方請先用 isLoggable() 判斷 或改用 lazyLogE()
+     *
+     * @param caller
+     * @param format
+     * @param args
+     */
+    public static void e(Object caller, String format, Object... args) {
+        if (isLoggable(caller, ERROR)) {
+            printLog(caller, formatMessage(format, args), ERROR, true);
+        }
+    }
+
+    /**
+     * 只有在 isLoggable() 為 true 時才會呼叫 supplier 取得訊息
+     * 與 e(Object, String) 使用不同的名稱 避免 e(caller, null) 無法判斷要呼叫哪一個
+     *
+     * @param caller
+     * @param supplier
+     */
+    public static void lazyLogE(Object caller, MessageSupplier supplier) {
+        if (supplier != null && isLoggable(caller, ERROR)) {
+            printLog(caller, supplier.getMessage(), ERROR, true);
+        }
+    }
+
     public static void e(Object caller, int value) {
-        printLog(caller, String.valueOf(value), ERROR, true);
+        if (isLoggable(caller, ERROR)) {
+            printLog(caller, String.valueOf(value), ERROR, true);
+        }
     }
 
     public static void e(Object caller, long value) {
-        printLog(caller, String.valueOf(value), ERROR, true);
+        if (isLoggable(caller, ERROR)) {
+            printLog(caller, String.valueOf(value), ERROR, true);
+        }
     }
 
     public static void e(Object caller, float value) {
-        printLog(caller, String.valueOf(value), ERROR, true);
+        if (isLoggable(caller, ERROR)) {
+            printLog(caller, String.valueOf(value), ERROR, true);
+        }
     }
 
     public static void e(Object caller, double value) {
-        printLog(caller, String.valueOf(value), ERROR, true);
+        if (isLoggable(caller, ERROR)) {
+            printLog(caller, String.valueOf(value), ERROR, true);
+        }
     }
 
     public static void e(Object caller, boolean value) {
-        printLog(caller, String.valueOf(value), ERROR, true);
+        if (isLoggable(caller, ERROR)) {
+            printLog(caller, String.valueOf(value), ERROR, true);
+        }
     }
 
     public static void e(Object caller, char value) {
-        printLog(caller, String.valueOf(value), ERROR, true);
+        if (isLoggable(caller, ERROR)) {
+            printLog(caller, String.valueOf(value), ERROR, true);
+        }
     }
 
     public static void onlyLogV(Object caller, String msg) {
@@ -375,6 +1676,8 @@ public class LogUtils {
                 return false;
             }
         }
+        //listener 會在主執行緒才被呼叫 這邊先自己更新 讓設定立即生效
+        refreshLogConfig();
         return true;
     }
 
@@ -385,17 +1688,11 @@ public class LogUtils {
      * @return
      */
     public static boolean isEnableLogToFile() {
-        if (!isPrepared()) {
-            throw new NotPreparedException();
-        }
-        SharedPreferences sp = PreferenceUtils.getPreference(appContext, LOG_CONFIG);
-        if (sp == null) {
-            LogUtils.e(TAG, "isEnableLogToFile() failed: sp is null");
-            NullPointerException e = new NullPointerException("isEnableLogToFile() error: sp is null");
-            e.printStackTrace();
-            throw e;
+        LogConfig config = logConfig;
+        if (config == null) {
+            config = requireLogConfig();
         }
-        return sp.getBoolean(ENABLE_LOG_TO_FILE, false);
+        return config.isLogToFileEnabled;
     }
 
     private static class NotPreparedException extends RuntimeException {
@@ -407,10 +1704,7 @@ public class LogUtils {
 
     @Override
     protected void finalize() throws Throwable {
-        if (logBuffer.cacheLog != null && lastLogDate != null) {
-            String targetFileName = lastLogDate + LOG_FILE_NAME_POSTFIX;
-            writeLogToFile(targetFileName, logBuffer.cacheLog.toString());
-        }
+        logBuffer.flush();
         super.finalize();
     }
 }
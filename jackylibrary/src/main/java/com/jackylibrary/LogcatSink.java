@@ -0,0 +1,35 @@
+package com.jackylibrary;
+
+import android.util.Log;
+
+/**
+ * 輸出到 logcat 的 sink
+ * 搭配 LogUtils.setLogcatEnabled(false) 使用 可以讓 logcat 有自己的等級過濾 也不會佔用呼叫端的時間
+ */
+public class LogcatSink implements LogSink {
+
+    @Override
+    public void write(long timestamp, int level, String tag, String message) {
+        switch (level) {
+            case LogUtils.VERBOSE:
+                Log.v(tag, message);
+                break;
+            case LogUtils.DEBUG:
+                Log.d(tag, message);
+                break;
+            case LogUtils.INFO:
+                Log.i(tag, message);
+                break;
+            case LogUtils.WARN:
+                Log.w(tag, message);
+                break;
+            case LogUtils.ERROR:
+                Log.e(tag, message);
+                break;
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+}
@@ -0,0 +1,170 @@
+package com.jackylibrary;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * 以 mmap 唯讀對應整個檔案 內容由系統依需要載入 不會複製到 java heap
+ * 適合逐行或逐筆掃描很大的資料檔 由 FileUtils.mapFile() 取得
+ * nextLine() 與 nextRecord() 回傳的 ByteBuffer 都是檔案內容的唯讀 view 只有轉成 String 時才會複製
+ * 不是 thread safe 多條執行緒需要各自使用 getBuffer() 取得自己的 view
+ * 例如:
+ * MappedFileReader reader = FileUtils.mapFile(file);
+ * String line;
+ * while ((line = reader.nextLine(charset)) != null) { ... }
+ * reader.close();
+ */
+public class MappedFileReader implements Closeable {
+
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    private final int length;
+    private int position = 0;
+
+    private MappedFileReader(RandomAccessFile randomAccessFile, MappedByteBuffer buffer, int length) {
+        this.randomAccessFile = randomAccessFile;
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    /**
+     * 檔案超過 Integer.MAX_VALUE bytes 時無法以單一 MappedByteBuffer 對應 會拋出 IOException
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    static MappedFileReader open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            long fileLength = randomAccessFile.length();
+            if (fileLength > Integer.MAX_VALUE) {
+                throw new IOException("file is too large to map: " + fileLength + " bytes");
+            }
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+            return new MappedFileReader(randomAccessFile, buffer, (int) fileLength);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * 回傳整個檔案的唯讀 view position 為 0 與 reader 目前的位置無關
+     *
+     * @return
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.duplicate();
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public void setPosition(int position) {
+        if (position < 0 || position > length) {
+            throw new IllegalArgumentException("position out of range: " + position);
+        }
+        this.position = position;
+    }
+
+    public boolean hasRemaining() {
+        return position < length;
+    }
+
+    /**
+     * 回傳到下一個 delimiter 為止的內容 (不包含 delimiter) 已經讀到結尾時回傳 null
+     * 最後一筆後面沒有 delimiter 時 回傳剩下的全部內容
+     *
+     * @param delimiter
+     * @return
+     */
+    public ByteBuffer nextRecord(byte delimiter) {
+        if (position >= length) {
+            return null;
+        }
+        int start = position;
+        int end = start;
+        while (end < length && buffer.get(end) != delimiter) {
+            end++;
+        }
+        position = end < length ? end + 1 : end;
+        return slice(start, end);
+    }
+
+    /**
+     * 回傳固定長度的一筆資料 剩下的內容不足 recordLength 時回傳剩下的部分 已經讀到結尾時回傳 null
+     *
+     * @param recordLength
+     * @return
+     */
+    public ByteBuffer nextRecord(int recordLength) {
+        if (recordLength <= 0) {
+            throw new IllegalArgumentException("recordLength must be positive: " + recordLength);
+        }
+        if (position >= length) {
+            return null;
+        }
+        int start = position;
+        int end = (int) Math.min((long) start + recordLength, length);
+        position = end;
+        return slice(start, end);
+    }
+
+    /**
+     * 回傳下一行的內容 支援 \n 與 \r\n 換行 回傳的內容不包含換行字元 已經讀到結尾時回傳 null
+     *
+     * @return
+     */
+    public ByteBuffer nextLine() {
+        ByteBuffer line = nextRecord(LINE_FEED);
+        if (line != null && line.limit() > 0 && line.get(line.limit() - 1) == CARRIAGE_RETURN) {
+            line.limit(line.limit() - 1);
+        }
+        return line;
+    }
+
+    /**
+     * 與 nextLine() 相同 但轉成字串 只有這一行會被複製到 heap
+     *
+     * @param charset null 時使用系統預設 (Android 為 UTF-8)
+     * @return
+     */
+    public String nextLine(Charset charset) {
+        ByteBuffer line = nextLine();
+        if (line == null) {
+            return null;
+        }
+        return (charset != null ? charset : Charset.defaultCharset()).decode(line).toString();
+    }
+
+    private ByteBuffer slice(int start, int end) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(end);
+        view.position(start);
+        return view.slice();
+    }
+
+    /**
+     * 關閉檔案 對應的記憶體要等 GC 回收所有 view 後才會釋放 關閉後仍可以讀取已經取得的 view
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+}
@@ -0,0 +1,53 @@
+package com.jackylibrary;
+
+import java.util.ArrayList;
+
+/**
+ * 只保留最新 capacity 筆 log 在記憶體中的 sink 適合做 app 內的診斷畫面
+ * getRecords() 可以在任何執行緒呼叫
+ */
+public class MemoryLogSink implements LogSink {
+
+    private final LogEntry[] records;
+    private int nextIndex = 0;
+    private int size = 0;
+
+    public MemoryLogSink(int capacity) {
+        records = new LogEntry[capacity > 0 ? capacity : 1];
+    }
+
+    @Override
+    public synchronized void write(long timestamp, int level, String tag, String message) {
+        records[nextIndex] = new LogEntry(timestamp, level, tag, message);
+        nextIndex = (nextIndex + 1) % records.length;
+        if (size < records.length) {
+            size++;
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * 由舊到新回傳目前保留的 log
+     *
+     * @return
+     */
+    public synchronized ArrayList<LogEntry> getRecords() {
+        ArrayList<LogEntry> result = new ArrayList<>(size);
+        int start = (nextIndex - size + records.length) % records.length;
+        for (int i = 0; i < size; i++) {
+            result.add(records[(start + i) % records.length]);
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < records.length; i++) {
+            records[i] = null;
+        }
+        nextIndex = 0;
+        size = 0;
+    }
+}
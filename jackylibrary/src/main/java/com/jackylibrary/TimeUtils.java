@@ -3,15 +3,43 @@ package com.jackylibrary;
 import android.content.ContentProvider;
 import android.provider.Settings;
 
+import java.text.DecimalFormatSymbols;
 import java.text.SimpleDateFormat;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
+import java.util.TimeZone;
 
 
 public class TimeUtils {
 
-    private static HashMap<String, SimpleDateFormat> sdfMap = new HashMap<>();
+    /**
+     * 這些格式不經過 SimpleDateFormat 直接由 FastDateFormatter 組出字串 同一秒內重複呼叫會回傳同一個字串
+     */
+    private static final String[] FAST_PATTERNS = {"yyyyMMdd", "HH:mm:ss ", "HH:mm:ss", "yyyy-MM-dd", "yyyy-MM-dd HH:mm:ss"};
+
+    /**
+     * SimpleDateFormat 不是 thread safe 每條執行緒各自保存一份
+     */
+    private static final ThreadLocal<HashMap<String, SimpleDateFormat>> sdfMaps = new ThreadLocal<HashMap<String, SimpleDateFormat>>() {
+        @Override
+        protected HashMap<String, SimpleDateFormat> initialValue() {
+            return new HashMap<>();
+        }
+    };
+    private static final ThreadLocal<Date> dates = new ThreadLocal<Date>() {
+        @Override
+        protected Date initialValue() {
+            return new Date();
+        }
+    };
+    private static final ThreadLocal<FastDateFormatter> fastDateFormatters = new ThreadLocal<FastDateFormatter>() {
+        @Override
+        protected FastDateFormatter initialValue() {
+            return new FastDateFormatter();
+        }
+    };
 
     /**
      * 返回現在時間點的客製化時間格式
@@ -27,17 +55,236 @@ public class TimeUtils {
     /**
      * 返回指定時間戳的客製化時間格式
      * yyyy年 MM月 dd日 HH時 mm分 ss秒
+     * 可以在多條執行緒同時呼叫
      *
      * @param customDateFormat
      * @param timeStamp
      * @return
      */
     public static String getDateFormat(String customDateFormat, long timeStamp) {
+        FastDateFormatter formatter = getFastDateFormatter();
+        int patternIndex = getFastPatternIndex(customDateFormat);
+        if (patternIndex != -1) {
+            String result = formatter.format(patternIndex, timeStamp);
+            if (result != null) {
+                return result;
+            }
+        }
+        Date date = dates.get();
+        date.setTime(timeStamp);
+        return getSimpleDateFormat(customDateFormat).format(date);
+    }
+
+    /**
+     * 與 getDateFormat() 相同 但直接附加到 sb 後面 常用的格式不需要產生新的字串
+     *
+     * @param sb
+     * @param customDateFormat
+     * @param timeStamp
+     */
+    public static void appendDateFormat(StringBuilder sb, String customDateFormat, long timeStamp) {
+        FastDateFormatter formatter = getFastDateFormatter();
+        int patternIndex = getFastPatternIndex(customDateFormat);
+        if (patternIndex != -1 && formatter.append(sb, patternIndex, timeStamp)) {
+            return;
+        }
+        Date date = dates.get();
+        date.setTime(timeStamp);
+        sb.append(getSimpleDateFormat(customDateFormat).format(date));
+    }
+
+    /**
+     * 取得這條執行緒的 FastDateFormatter 並確認時區與語系是否改變
+     * 兩種路徑都會先經過這裡 因此同一個時間點不論使用哪種格式 都以相同的時區與語系輸出
+     *
+     * @return
+     */
+    private static FastDateFormatter getFastDateFormatter() {
+        FastDateFormatter formatter = fastDateFormatters.get();
+        if (formatter.refreshDefaults()) {
+            //SimpleDateFormat 建立時會記住當時的時區與語系 改變後重新建立
+            sdfMaps.get().clear();
+        }
+        return formatter;
+    }
+
+    private static SimpleDateFormat getSimpleDateFormat(String customDateFormat) {
+        HashMap<String, SimpleDateFormat> sdfMap = sdfMaps.get();
         SimpleDateFormat sdf = sdfMap.get(customDateFormat);
         if (sdf == null) {
             sdf = new SimpleDateFormat(customDateFormat, Locale.getDefault());
             sdfMap.put(customDateFormat, sdf);
         }
-        return sdf.format(new Date(timeStamp));
+        return sdf;
+    }
+
+    private static int getFastPatternIndex(String customDateFormat) {
+        for (int i = 0; i < FAST_PATTERNS.length; i++) {
+            if (FAST_PATTERNS[i].equals(customDateFormat)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 每條執行緒一份 記住最近一次換算的秒數與年月日時分秒
+     * 同一秒內不需要再換算 也會直接回傳上次組好的字串
+     * 目前語系的數字不是 0 ~ 9 時 (例如部分阿拉伯語系) 回傳 null 交給 SimpleDateFormat 處理
+     * 語系改變時立即生效 時區改變時最晚在 1 秒後生效 (TimeZone.getDefault() 每次都會複製一份 不在每次呼叫時檢查)
+     */
+    private static class FastDateFormatter {
+        private final Calendar calendar = Calendar.getInstance();
+        private final String[] cachedStrings = new String[FAST_PATTERNS.length];
+        private long cachedSecond = Long.MIN_VALUE;
+        private Locale locale;
+        private TimeZone timeZone = calendar.getTimeZone();
+        private long timeZoneCheckedSecond = Long.MIN_VALUE;
+        private boolean isAsciiDigits;
+        private int year;
+        private int month;
+        private int day;
+        private int hour;
+        private int minute;
+        private int second;
+
+        private String format(int patternIndex, long timeStamp) {
+            if (!update(timeStamp)) {
+                return null;
+            }
+            String result = cachedStrings[patternIndex];
+            if (result == null) {
+                StringBuilder sb = new StringBuilder(FAST_PATTERNS[patternIndex].length());
+                appendFields(sb, patternIndex);
+                result = sb.toString();
+                cachedStrings[patternIndex] = result;
+            }
+            return result;
+        }
+
+        private boolean append(StringBuilder sb, int patternIndex, long timeStamp) {
+            if (!update(timeStamp)) {
+                return false;
+            }
+            String cachedString = cachedStrings[patternIndex];
+            if (cachedString != null) {
+                sb.append(cachedString);
+            } else {
+                appendFields(sb, patternIndex);
+            }
+            return true;
+        }
+
+        /**
+         * 檢查預設的語系與時區 改變時清除快取
+         *
+         * @return 是否有改變
+         */
+        private boolean refreshDefaults() {
+            boolean isChanged = false;
+            Locale defaultLocale = Locale.getDefault();
+            if (defaultLocale != locale) {
+                locale = defaultLocale;
+                isAsciiDigits = DecimalFormatSymbols.getInstance(locale).getZeroDigit() == '0';
+                isChanged = true;
+            }
+            //以目前的時間計算 每秒最多檢查一次時區
+            long nowSecond = System.currentTimeMillis() / 1000;
+            if (nowSecond != timeZoneCheckedSecond) {
+                timeZoneCheckedSecond = nowSecond;
+                TimeZone defaultTimeZone = TimeZone.getDefault();
+                if (!defaultTimeZone.getID().equals(timeZone.getID()) || !defaultTimeZone.hasSameRules(timeZone)) {
+                    timeZone = defaultTimeZone;
+                    calendar.setTimeZone(timeZone);
+                    isChanged = true;
+                }
+            }
+            if (isChanged) {
+                cachedSecond = Long.MIN_VALUE;
+            }
+            return isChanged;
+        }
+
+        /**
+         * 回傳 false 代表不能使用快速路徑 呼叫前需先呼叫 refreshDefaults()
+         *
+         * @param timeStamp
+         * @return
+         */
+        private boolean update(long timeStamp) {
+            long epochSecond = timeStamp >= 0 ? timeStamp / 1000 : (timeStamp - 999) / 1000;
+            if (epochSecond == cachedSecond || !isAsciiDigits) {
+                return isAsciiDigits;
+            }
+            calendar.setTimeInMillis(timeStamp);
+            year = calendar.get(Calendar.YEAR);
+            month = calendar.get(Calendar.MONTH) + 1;
+            day = calendar.get(Calendar.DAY_OF_MONTH);
+            hour = calendar.get(Calendar.HOUR_OF_DAY);
+            minute = calendar.get(Calendar.MINUTE);
+            second = calendar.get(Calendar.SECOND);
+            for (int i = 0; i < cachedStrings.length; i++) {
+                cachedStrings[i] = null;
+            }
+            cachedSecond = epochSecond;
+            return isAsciiDigits;
+        }
+
+        private void appendFields(StringBuilder sb, int patternIndex) {
+            switch (patternIndex) {
+                case 0:
+                    //yyyyMMdd
+                    appendPadded(sb, year, 4);
+                    appendPadded(sb, month, 2);
+                    appendPadded(sb, day, 2);
+                    break;
+                case 1:
+                    //HH:mm:ss 後面有空白
+                    appendTime(sb);
+                    sb.append(' ');
+                    break;
+                case 2:
+                    //HH:mm:ss
+                    appendTime(sb);
+                    break;
+                case 3:
+                    //yyyy-MM-dd
+                    appendDate(sb);
+                    break;
+                case 4:
+                    //yyyy-MM-dd HH:mm:ss
+                    appendDate(sb);
+                    sb.append(' ');
+                    appendTime(sb);
+                    break;
+            }
+        }
+
+        private void appendDate(StringBuilder sb) {
+            appendPadded(sb, year, 4);
+            sb.append('-');
+            appendPadded(sb, month, 2);
+            sb.append('-');
+            appendPadded(sb, day, 2);
+        }
+
+        private void appendTime(StringBuilder sb) {
+            appendPadded(sb, hour, 2);
+            sb.append(':');
+            appendPadded(sb, minute, 2);
+            sb.append(':');
+            appendPadded(sb, second, 2);
+        }
+
+        private static void appendPadded(StringBuilder sb, int value, int width) {
+            int limit = 1;
+            for (int i = 1; i < width; i++) {
+                limit *= 10;
+                if (value < limit) {
+                    sb.append('0');
+                }
+            }
+            sb.append(value);
+        }
     }
 }
@@ -0,0 +1,95 @@
+package com.jackylibrary.model;
+
+import android.database.Cursor;
+
+import com.jackylibrary.LogUtils;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 逐筆讀取查詢結果的 iterator 不會先把整個結果放進 ArrayList
+ * 每次呼叫 next() 才從 cursor 讀出一筆資料轉成 entity 記憶體用量與資料表大小無關
+ * 若建立時 reuseEntity 為 true 則每次 next() 都會回傳同一個 entity 實例 (內容為當下那一筆資料)
+ * 此時請不要保留回傳的 entity 參照 需要保留的話請自行複製
+ * 讀取完畢時會自動關閉 cursor 提前結束讀取時 請務必呼叫 close()
+ */
+public class EntityIterator implements Iterator<JackyEntity>, Closeable {
+
+    private static final String TAG = EntityIterator.class.getName();
+    private Cursor cursor;
+    private EntityMapper mapper;
+    private int[] columnIndices;
+    private JackyEntity reusedEntity;
+    private boolean isReuseEntity;
+    private boolean isPrefetched;
+    private boolean hasNextRow;
+
+    EntityIterator(Cursor cursor, EntityMapper mapper, boolean isReuseEntity) {
+        this.cursor = cursor;
+        this.mapper = mapper;
+        this.isReuseEntity = isReuseEntity;
+        columnIndices = mapper.bindColumns(cursor);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!isPrefetched) {
+            hasNextRow = cursor != null && cursor.moveToNext();
+            isPrefetched = true;
+            if (!hasNextRow) {
+                close();
+            }
+        }
+        return hasNextRow;
+    }
+
+    /**
+     * 回傳下一筆資料 回傳 null 代表轉換 entity 失敗 此時 iterator 會直接關閉
+     *
+     * @return
+     */
+    @Override
+    public JackyEntity next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        isPrefetched = false;
+        JackyEntity entity;
+        if (isReuseEntity && reusedEntity != null) {
+            entity = reusedEntity;
+        } else {
+            entity = mapper.newEntity();
+            if (entity == null) {
+                LogUtils.e(TAG, "next() error: can not create entity");
+                close();
+                return null;
+            }
+            if (isReuseEntity) {
+                reusedEntity = entity;
+            }
+        }
+        if (!mapper.readEntity(cursor, columnIndices, entity)) {
+            LogUtils.e(TAG, "next() error: can not read entity");
+            close();
+            return null;
+        }
+        return entity;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove() is not supported");
+    }
+
+    @Override
+    public void close() {
+        if (cursor != null) {
+            cursor.close();
+            cursor = null;
+        }
+        isPrefetched = true;
+        hasNextRow = false;
+    }
+}
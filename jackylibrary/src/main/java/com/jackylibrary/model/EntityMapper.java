@@ -0,0 +1,421 @@
+package com.jackylibrary.model;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import com.jackylibrary.LogUtils;
+import com.jackylibrary.StringUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static com.jackylibrary.JackyDBHelper.KEY_ID;
+import static com.jackylibrary.JackyDBHelper.UPDATE_TIME;
+
+/**
+ * 負責把 Cursor 的資料列轉成 JackyEntity 的工具
+ * 每個 JackyEntity 子類別只會建立一次 mapper 並快取起來
+ * 欄位名稱 欄位型態 以及對應的 setter 都在建立時就先解析好
+ * 使用時每個 cursor 只需呼叫一次 bindColumns() 取得欄位索引
+ * 之後每一筆資料只需呼叫 readEntity() 即可 不會再做任何字串處理或 method 查找
+ * 若該類別有透過 jackylibrary-compiler 產生 JackyEntityBinding 則會直接使用 否則使用反射
+ */
+abstract class EntityMapper {
+
+    private static final String TAG = EntityMapper.class.getName();
+    static final int TYPE_INT = 1;
+    static final int TYPE_LONG = 2;
+    static final int TYPE_BYTE = 3;
+    static final int TYPE_SHORT = 4;
+    static final int TYPE_FLOAT = 5;
+    static final int TYPE_DOUBLE = 6;
+    static final int TYPE_STRING = 7;
+    private static HashMap<Class<? extends JackyEntity>, EntityMapper> mapperMap = new HashMap<>();
+
+    /**
+     * 取得該 JackyEntity 子類別對應的 mapper 第一次呼叫時會建立並快取
+     * 回傳 null 代表無法建立 mapper
+     *
+     * @param childClass
+     * @return
+     */
+    static EntityMapper getMapper(Class<? extends JackyEntity> childClass) {
+        if (childClass == null) {
+            return null;
+        }
+        synchronized (mapperMap) {
+            EntityMapper mapper = mapperMap.get(childClass);
+            if (mapper == null) {
+                //優先使用編譯期產生的綁定類別 沒有的話才改用反射
+                JackyEntityBinding binding = loadBinding(childClass);
+                if (binding != null) {
+                    mapper = new GeneratedEntityMapper(binding);
+                } else {
+                    mapper = new ReflectiveEntityMapper(childClass);
+                }
+                mapperMap.put(childClass, mapper);
+            }
+            return mapper;
+        }
+    }
+
+    /**
+     * 回傳該 JackyEntity 子類別在編譯期產生的綁定類別 沒有產生的話回傳 null
+     *
+     * @param childClass
+     * @return
+     */
+    static JackyEntityBinding getBinding(Class<? extends JackyEntity> childClass) {
+        EntityMapper mapper = getMapper(childClass);
+        if (mapper instanceof GeneratedEntityMapper) {
+            return ((GeneratedEntityMapper) mapper).binding;
+        }
+        return null;
+    }
+
+    private static JackyEntityBinding loadBinding(Class<? extends JackyEntity> childClass) {
+        String bindingClassName = JackyEntityBinding.getBindingClassName(childClass);
+        try {
+            Class<?> bindingClass = Class.forName(bindingClassName, true, childClass.getClassLoader());
+            if (!JackyEntityBinding.class.isAssignableFrom(bindingClass)) {
+                LogUtils.w(TAG, "loadBinding() failed: " + bindingClassName + " is not a JackyEntityBinding");
+                return null;
+            }
+            return (JackyEntityBinding) bindingClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            //沒有使用 jackylibrary-compiler 或該類別沒有被處理 屬於正常情況
+            return null;
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+            LogUtils.e(TAG, "loadBinding() error: " + e.getMessage());
+        } catch (InstantiationException e) {
+            e.printStackTrace();
+            LogUtils.e(TAG, "loadBinding() error: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 回傳此 mapper 會讀取的欄位名稱 順序需與 readFields() 使用的索引順序一致
+     *
+     * @return
+     */
+    abstract String[] getColumnNames();
+
+    /**
+     * 建立一個新的 entity 實例 失敗時回傳 null
+     *
+     * @return
+     */
+    abstract JackyEntity newEntity();
+
+    /**
+     * 將 cursor 目前所在的資料列寫入 entity 的各個欄位
+     * columnIndices 為 bindColumns() 的回傳值 索引值為 -1 代表 cursor 中沒有該欄位 應略過
+     * 回傳 false 代表寫入失敗
+     *
+     * @param cursor
+     * @param columnIndices
+     * @param entity
+     * @return
+     */
+    abstract boolean readFields(Cursor cursor, int[] columnIndices, JackyEntity entity);
+
+    /**
+     * 將 entity 的欄位值依 getColumnNames() 的順序綁定到 statement 的第 1 ~ n 個參數
+     * 回傳 false 代表綁定失敗
+     *
+     * @param statement
+     * @param entity
+     * @return
+     */
+    abstract boolean bindInsert(SQLiteStatement statement, JackyEntity entity);
+
+    /**
+     * 對一個 cursor 解析一次欄位索引 回傳的陣列可在整個 cursor 的讀取過程重複使用
+     * 最後兩格分別放 _id 與 updateTime 的索引
+     *
+     * @param cursor
+     * @return
+     */
+    final int[] bindColumns(Cursor cursor) {
+        String[] columnNames = getColumnNames();
+        int[] columnIndices = new int[columnNames.length + 2];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnIndices[i] = cursor.getColumnIndex(columnNames[i]);
+        }
+        columnIndices[columnNames.length] = cursor.getColumnIndex(KEY_ID);
+        columnIndices[columnNames.length + 1] = cursor.getColumnIndex(UPDATE_TIME);
+        return columnIndices;
+    }
+
+    /**
+     * 將 cursor 目前所在的資料列完整寫入 entity 包含 _id 與 updateTime
+     * 回傳 false 代表寫入失敗
+     *
+     * @param cursor
+     * @param columnIndices
+     * @param entity
+     * @return
+     */
+    final boolean readEntity(Cursor cursor, int[] columnIndices, JackyEntity entity) {
+        if (!readFields(cursor, columnIndices, entity)) {
+            return false;
+        }
+        int idIndex = columnIndices[columnIndices.length - 2];
+        int updateTimeIndex = columnIndices[columnIndices.length - 1];
+        if (idIndex != -1) {
+            entity.set_id(cursor.getInt(idIndex));
+        }
+        if (updateTimeIndex != -1) {
+            entity.setUpdateTime(cursor.getString(updateTimeIndex));
+        }
+        return true;
+    }
+
+    static int getTypeByClass(Class<?> type) {
+        if (type == int.class) {
+            return TYPE_INT;
+        } else if (type == long.class) {
+            return TYPE_LONG;
+        } else if (type == byte.class) {
+            return TYPE_BYTE;
+        } else if (type == short.class) {
+            return TYPE_SHORT;
+        } else if (type == float.class) {
+            return TYPE_FLOAT;
+        } else if (type == double.class) {
+            return TYPE_DOUBLE;
+        } else if (type == String.class) {
+            return TYPE_STRING;
+        }
+        return 0;
+    }
+
+    static String getSetterNameForFieldName(String fieldName) {
+        return getAccessorName("set", fieldName);
+    }
+
+    static String getGetterNameForFieldName(String fieldName) {
+        return getAccessorName("get", fieldName);
+    }
+
+    private static String getAccessorName(String prefix, String fieldName) {
+        if (StringUtils.isNullOrEmpty(fieldName)) {
+            return null;
+        }
+        if (fieldName.length() == 1) {
+            return prefix + fieldName.toUpperCase();
+        }
+        return prefix + fieldName.substring(0, 1).toUpperCase() + fieldName.substring(1);
+    }
+
+    /**
+     * 將讀寫工作交給編譯期產生的 JackyEntityBinding 完全不使用反射
+     */
+    private static class GeneratedEntityMapper extends EntityMapper {
+        private JackyEntityBinding binding;
+
+        private GeneratedEntityMapper(JackyEntityBinding binding) {
+            this.binding = binding;
+        }
+
+        @Override
+        String[] getColumnNames() {
+            return binding.getColumnNames();
+        }
+
+        @Override
+        JackyEntity newEntity() {
+            return binding.newEntity();
+        }
+
+        @Override
+        boolean readFields(Cursor cursor, int[] columnIndices, JackyEntity entity) {
+            binding.readFields(cursor, columnIndices, entity);
+            return true;
+        }
+
+        @Override
+        boolean bindInsert(SQLiteStatement statement, JackyEntity entity) {
+            binding.bindInsert(statement, entity);
+            return true;
+        }
+    }
+
+    /**
+     * 沒有產生綁定類別時 透過反射來讀寫 entity 的 mapper
+     * 反射需要的 Method 都在建構時解析好 讀取資料列時只剩下 invoke
+     */
+    private static class ReflectiveEntityMapper extends EntityMapper {
+        private Class<? extends JackyEntity> entityClass;
+        private String[] columnNames;
+        private int[] types;
+        private Method[] setters;
+        private Method[] getters;
+
+        private ReflectiveEntityMapper(Class<? extends JackyEntity> entityClass) {
+            this.entityClass = entityClass;
+            ArrayList<String> nameList = new ArrayList<>();
+            ArrayList<Integer> typeList = new ArrayList<>();
+            ArrayList<Method> setterList = new ArrayList<>();
+            ArrayList<Method> getterList = new ArrayList<>();
+            for (Field field : entityClass.getDeclaredFields()) {
+                if (field.isSynthetic() || Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                int type = getTypeByClass(field.getType());
+                if (type == 0) {
+                    continue;
+                }
+                Method setter = null;
+                try {
+                    setter = entityClass.getDeclaredMethod(getSetterNameForFieldName(field.getName()), field.getType());
+                    setter.setAccessible(true);
+                } catch (NoSuchMethodException e) {
+                    //找不到 setter 先記錄為 null 等到真的讀到此欄位時才視為錯誤
+                    LogUtils.w(TAG, "ReflectiveEntityMapper: setter not found for field " + field.getName()
+                            + " in " + entityClass.getName());
+                }
+                Method getter = null;
+                try {
+                    getter = entityClass.getDeclaredMethod(getGetterNameForFieldName(field.getName()));
+                    if (getter.getReturnType() == field.getType()) {
+                        getter.setAccessible(true);
+                    } else {
+                        getter = null;
+                    }
+                } catch (NoSuchMethodException e) {
+                    //getter 只有在寫入資料時才需要 等到真的用到時才視為錯誤
+                }
+                nameList.add(field.getName());
+                typeList.add(type);
+                setterList.add(setter);
+                getterList.add(getter);
+            }
+            columnNames = nameList.toArray(new String[nameList.size()]);
+            setters = setterList.toArray(new Method[setterList.size()]);
+            getters = getterList.toArray(new Method[getterList.size()]);
+            types = new int[typeList.size()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = typeList.get(i);
+            }
+        }
+
+        @Override
+        String[] getColumnNames() {
+            return columnNames;
+        }
+
+        @Override
+        JackyEntity newEntity() {
+            try {
+                return entityClass.newInstance();
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+                LogUtils.e(TAG, "newEntity() error: " + e.getMessage());
+            } catch (InstantiationException e) {
+                e.printStackTrace();
+                LogUtils.e(TAG, "newEntity() error: " + e.getMessage());
+            }
+            return null;
+        }
+
+        @Override
+        boolean readFields(Cursor cursor, int[] columnIndices, JackyEntity entity) {
+            for (int i = 0; i < columnNames.length; i++) {
+                int columnIndex = columnIndices[i];
+                if (columnIndex == -1) {
+                    continue;
+                }
+                Method setter = setters[i];
+                if (setter == null) {
+                    LogUtils.w(TAG, "readFields() failed: setter not found for field " + columnNames[i]);
+                    return false;
+                }
+                try {
+                    switch (types[i]) {
+                        case TYPE_INT:
+                            setter.invoke(entity, cursor.getInt(columnIndex));
+                            break;
+                        case TYPE_LONG:
+                            setter.invoke(entity, cursor.getLong(columnIndex));
+                            break;
+                        case TYPE_BYTE:
+                            setter.invoke(entity, (byte) cursor.getInt(columnIndex));
+                            break;
+                        case TYPE_SHORT:
+                            setter.invoke(entity, cursor.getShort(columnIndex));
+                            break;
+                        case TYPE_FLOAT:
+                            setter.invoke(entity, cursor.getFloat(columnIndex));
+                            break;
+                        case TYPE_DOUBLE:
+                            setter.invoke(entity, cursor.getDouble(columnIndex));
+                            break;
+                        case TYPE_STRING:
+                            setter.invoke(entity, cursor.getString(columnIndex));
+                            break;
+                    }
+                } catch (IllegalAccessException e) {
+                    e.printStackTrace();
+                    LogUtils.e(TAG, "readFields() error: " + e.getMessage());
+                    return false;
+                } catch (InvocationTargetException e) {
+                    e.printStackTrace();
+                    LogUtils.e(TAG, "readFields() error: " + e.getMessage());
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        boolean bindInsert(SQLiteStatement statement, JackyEntity entity) {
+            for (int i = 0; i < columnNames.length; i++) {
+                Method getter = getters[i];
+                if (getter == null) {
+                    LogUtils.w(TAG, "bindInsert() failed: getter not found for field " + columnNames[i]);
+                    return false;
+                }
+                Object value;
+                try {
+                    value = getter.invoke(entity);
+                } catch (IllegalAccessException e) {
+                    e.printStackTrace();
+                    LogUtils.e(TAG, "bindInsert() error: " + e.getMessage());
+                    return false;
+                } catch (InvocationTargetException e) {
+                    e.printStackTrace();
+                    LogUtils.e(TAG, "bindInsert() error: " + e.getMessage());
+                    return false;
+                }
+                int bindIndex = i + 1;
+                if (value == null) {
+                    statement.bindNull(bindIndex);
+                    continue;
+                }
+                switch (types[i]) {
+                    case TYPE_INT:
+                    case TYPE_LONG:
+                    case TYPE_BYTE:
+                    case TYPE_SHORT:
+                        statement.bindLong(bindIndex, ((Number) value).longValue());
+                        break;
+                    case TYPE_FLOAT:
+                    case TYPE_DOUBLE:
+                        statement.bindDouble(bindIndex, ((Number) value).doubleValue());
+                        break;
+                    case TYPE_STRING:
+                        statement.bindString(bindIndex, (String) value);
+                        break;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.jackylibrary.model;
+
+import java.util.ArrayList;
+
+/**
+ * 分頁查詢的結果 由 JackyDao.queryPageAfterId() 與 JackyDao.queryChangedSince() 回傳
+ * 要讀取下一頁時 把 getLastId() (與 getLastUpdateTime()) 當作下一次查詢的起點即可
+ * 不需要使用 OFFSET 因此不論翻到第幾頁 查詢成本都相同
+ */
+public class EntityPage {
+    private ArrayList<JackyEntity> entities;
+    private boolean hasMore;
+    private long lastId;
+    private String lastUpdateTime;
+
+    EntityPage(ArrayList<JackyEntity> entities, boolean hasMore, long lastId, String lastUpdateTime) {
+        this.entities = entities;
+        this.hasMore = hasMore;
+        this.lastId = lastId;
+        this.lastUpdateTime = lastUpdateTime;
+    }
+
+    public ArrayList<JackyEntity> getEntities() {
+        return entities;
+    }
+
+    /**
+     * 回傳 true 代表後面還有下一頁
+     *
+     * @return
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * 回傳本頁最後一筆資料的 _id 本頁沒有資料時 回傳查詢時傳入的起點
+     *
+     * @return
+     */
+    public long getLastId() {
+        return lastId;
+    }
+
+    /**
+     * 回傳本頁最後一筆資料的 updateTime 本頁沒有資料時 回傳查詢時傳入的起點
+     * 下一次同步請以此時間搭配 afterId = 0 重新查詢 原因請參考 JackyDao.queryChangedSince()
+     *
+     * @return
+     */
+    public String getLastUpdateTime() {
+        return lastUpdateTime;
+    }
+}
@@ -0,0 +1,19 @@
+package com.jackylibrary.model;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 標註在 JackyEntity 子類別的欄位上 JackyDao.addColumnInfosByEntity() 會替該欄位建立索引
+ * 多個欄位標註相同的 name 時 會依欄位宣告的順序合併成一個複合索引 是否為 unique 以第一個欄位的設定為準
+ * 沒有指定 name 時 會自動以資料表名稱與欄位名稱命名
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Indexed {
+    boolean unique() default false;
+
+    String name() default "";
+}
@@ -2,6 +2,7 @@ package com.jackylibrary.model;
 
 import android.app.Activity;
 import android.os.Bundle;
+import android.os.Handler;
 import androidx.annotation.CallSuper;
 import androidx.multidex.MultiDexApplication;
 import android.util.Pair;
@@ -21,10 +22,44 @@ public class JackyApplication extends MultiDexApplication {
 
     private static final String TAG = JackyApplication.class.getName();
     private int activityStartedCount = 0;
+    private Handler handler;
+    private final Runnable closeDBRunnable = new Runnable() {
+        @Override
+        public void run() {
+            JackyDBHelper instance = JackyDBHelper.getInstance();
+            if (instance != null) {
+                LogUtils.d(TAG, "close database after idle timeout");
+                instance.closeDBIfExist();
+            }
+        }
+    };
+
+    /**
+     * app 切換到背景時 資料庫的處理方式 請參考 getDBLifecyclePolicy()
+     */
+    public enum DBLifecyclePolicy {
+        /**
+         * 不做任何處理 保持連線
+         */
+        KEEP_OPEN,
+        /**
+         * 保持連線 但將 WAL 寫回資料庫並釋放 SQLite 的記憶體
+         */
+        CHECKPOINT_AND_TRIM,
+        /**
+         * 在背景持續 getDBIdleTimeoutMillis() 後才關閉資料庫 期間回到前景則取消
+         */
+        CLOSE_WHEN_IDLE,
+        /**
+         * 立即關閉資料庫 (舊版的行為)
+         */
+        CLOSE_IMMEDIATELY
+    }
 
     @Override
     public void onCreate() {
         super.onCreate();
+        handler = new Handler(getMainLooper());
         LogUtils.prepare(this);
         PermissionHelper.prepare(this);
         ArrayList<Pair<Class<? extends JackyDao>, Class<? extends JackyEntity>>> requiredDaoEntityPairs = getRequiredDaoEntityPairs();
@@ -90,6 +125,7 @@ public class JackyApplication extends MultiDexApplication {
     @CallSuper
     public void onChangeToForeground() {
         LogUtils.d(TAG, "Application changes to the foreground");
+        handler.removeCallbacks(closeDBRunnable);
     }
 
     /**
@@ -100,12 +136,56 @@ public class JackyApplication extends MultiDexApplication {
     public void onChangeToBackground() {
         LogUtils.d(TAG, "Application changes to the background");
         LogUtils.flushLog();
-        JackyDBHelper instance = JackyDBHelper.getInstance();
-        if (instance != null) {
-            instance.closeDBIfExist();
+        final JackyDBHelper instance = JackyDBHelper.getInstance();
+        if (instance == null) {
+            return;
+        }
+        DBLifecyclePolicy policy = getDBLifecyclePolicy();
+        if (policy == null) {
+            policy = DBLifecyclePolicy.CHECKPOINT_AND_TRIM;
+        }
+        switch (policy) {
+            case KEEP_OPEN:
+                break;
+            case CHECKPOINT_AND_TRIM:
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        instance.checkpointAndTrimMemory();
+                    }
+                }, "JackyDBHelper-trim").start();
+                break;
+            case CLOSE_WHEN_IDLE:
+                handler.removeCallbacks(closeDBRunnable);
+                handler.postDelayed(closeDBRunnable, getDBIdleTimeoutMillis());
+                break;
+            case CLOSE_IMMEDIATELY:
+                instance.closeDBIfExist();
+                break;
         }
     }
 
+    /**
+     * app 切換到背景時 資料庫的處理方式 預設為 CHECKPOINT_AND_TRIM
+     * 關閉資料庫會清掉 SQLite 的頁面快取與 statement 快取 下次查詢時需要重新開啟並檢查資料表結構
+     * 因此除非有特別的需求 不建議使用 CLOSE_IMMEDIATELY
+     * 開發者可以覆寫此方法回傳其他的處理方式
+     *
+     * @return
+     */
+    public DBLifecyclePolicy getDBLifecyclePolicy() {
+        return DBLifecyclePolicy.CHECKPOINT_AND_TRIM;
+    }
+
+    /**
+     * 使用 CLOSE_WHEN_IDLE 時 app 在背景持續多久後關閉資料庫 單位為毫秒 預設為 5 分鐘
+     *
+     * @return
+     */
+    public long getDBIdleTimeoutMillis() {
+        return 5 * 60 * 1000L;
+    }
+
 
     /**
      * 這個方法會在 app onCreate 時被調用 用來 register 需要的 JackyDao 資訊
@@ -0,0 +1,415 @@
+package com.jackylibrary.model;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.jackylibrary.JackyDBHelper;
+import com.jackylibrary.LogUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JackyDao 的非同步版本 所有方法都會立即回傳 Future 不會卡住呼叫端的執行緒 (例如 UI 執行緒)
+ * 寫入 (insert / update / delete) 一律交給同一條寫入執行緒依序執行
+ * 寫入執行緒忙碌時排隊中的寫入會被合併在同一個交易中一次提交 減少每次寫入都要 commit 的成本
+ * 查詢則交給多條讀取執行緒平行執行 (資料庫需開啟 WAL 查詢才能真正與寫入平行 請參考 JackyDBHelper.DBConfig)
+ * 有傳入 onResultListener 的方法 會在主執行緒回傳結果 發生例外時 result 為 null
+ * 使用方式: JackyAsyncDao.getAsyncDao(MyDao.class).insertData(...)
+ */
+public class JackyAsyncDao {
+
+    private static final String TAG = JackyAsyncDao.class.getName();
+    /**
+     * 一次交易最多合併的寫入數量
+     */
+    public static final int MAX_WRITE_BATCH_SIZE = 64;
+    private static final int DEFAULT_READER_THREAD_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final LinkedBlockingQueue<DaoTask<?>> writeQueue = new LinkedBlockingQueue<>();
+    private static Thread writerThread;
+    private static ExecutorService readerExecutor;
+    private static Handler mainHandler;
+
+    private final JackyDao dao;
+
+    public JackyAsyncDao(JackyDao dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * 取得已註冊的 Dao 的非同步版本 Dao 尚未註冊時回傳 null
+     *
+     * @param daoClass
+     * @return
+     */
+    public static JackyAsyncDao getAsyncDao(Class<? extends JackyDao> daoClass) {
+        JackyDao dao = JackyDBHelper.getDao(daoClass);
+        if (dao == null) {
+            LogUtils.w(TAG, "getAsyncDao() failed: dao is not registered");
+            return null;
+        }
+        return new JackyAsyncDao(dao);
+    }
+
+    public JackyDao getDao() {
+        return dao;
+    }
+
+    public interface onResultListener<T> {
+        void onResult(T result);
+    }
+
+    public Future<Long> insertData(String[] columnNames, String[] values) {
+        return insertData(columnNames, values, null);
+    }
+
+    public Future<Long> insertData(final String[] columnNames, final String[] values, onResultListener<Long> listener) {
+        return submitWrite(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return dao.insertData(columnNames, values);
+            }
+        }, listener);
+    }
+
+    public Future<long[]> insertAll(String[] columnNames, List<String[]> valuesList) {
+        return insertAll(columnNames, valuesList, null);
+    }
+
+    public Future<long[]> insertAll(final String[] columnNames, final List<String[]> valuesList, onResultListener<long[]> listener) {
+        return submitWrite(new Callable<long[]>() {
+            @Override
+            public long[] call() {
+                return dao.insertAll(columnNames, valuesList);
+            }
+        }, listener);
+    }
+
+    public Future<long[]> insertEntities(List<? extends JackyEntity> entities) {
+        return insertEntities(entities, null);
+    }
+
+    public Future<long[]> insertEntities(final List<? extends JackyEntity> entities, onResultListener<long[]> listener) {
+        return submitWrite(new Callable<long[]>() {
+            @Override
+            public long[] call() {
+                return dao.insertEntities(entities);
+            }
+        }, listener);
+    }
+
+    public Future<Integer> updateData(String[] searchColumnNames, String[] searchValues,
+                                      String[] updateColumnNames, String[] updateValues) {
+        return updateData(searchColumnNames, searchValues, updateColumnNames, updateValues, null);
+    }
+
+    public Future<Integer> updateData(final String[] searchColumnNames, final String[] searchValues,
+                                      final String[] updateColumnNames, final String[] updateValues,
+                                      onResultListener<Integer> listener) {
+        return submitWrite(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return dao.updateData(searchColumnNames, searchValues, updateColumnNames, updateValues);
+            }
+        }, listener);
+    }
+
+    public Future<Integer> deleteData(String[] searchColumnNames, String[] searchValues) {
+        return deleteData(searchColumnNames, searchValues, null);
+    }
+
+    public Future<Integer> deleteData(final String[] searchColumnNames, final String[] searchValues,
+                                      onResultListener<Integer> listener) {
+        return submitWrite(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return dao.deleteData(searchColumnNames, searchValues);
+            }
+        }, listener);
+    }
+
+    public Future<Integer> deleteAllData() {
+        return deleteAllData(null);
+    }
+
+    public Future<Integer> deleteAllData(onResultListener<Integer> listener) {
+        return submitWrite(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return dao.deleteAllData();
+            }
+        }, listener);
+    }
+
+    public Future<ArrayList<? extends JackyEntity>> queryData(String[] searchColumnNames, String[] searchValues,
+                                                             Class<? extends JackyEntity> childClass) {
+        return queryData(searchColumnNames, searchValues, childClass, null);
+    }
+
+    public Future<ArrayList<? extends JackyEntity>> queryData(final String[] searchColumnNames, final String[] searchValues,
+                                                             final Class<? extends JackyEntity> childClass,
+                                                             onResultListener<ArrayList<? extends JackyEntity>> listener) {
+        return submitRead(new Callable<ArrayList<? extends JackyEntity>>() {
+            @Override
+            public ArrayList<? extends JackyEntity> call() {
+                return dao.queryData(searchColumnNames, searchValues, childClass);
+            }
+        }, listener);
+    }
+
+    public Future<ArrayList<? extends JackyEntity>> queryAllData(Class<? extends JackyEntity> childClass) {
+        return queryAllData(childClass, null);
+    }
+
+    public Future<ArrayList<? extends JackyEntity>> queryAllData(final Class<? extends JackyEntity> childClass,
+                                                                onResultListener<ArrayList<? extends JackyEntity>> listener) {
+        return submitRead(new Callable<ArrayList<? extends JackyEntity>>() {
+            @Override
+            public ArrayList<? extends JackyEntity> call() {
+                return dao.queryAllData(childClass);
+            }
+        }, listener);
+    }
+
+    public Future<EntityPage> queryPageAfterId(long afterId, int pageSize, Class<? extends JackyEntity> childClass) {
+        return queryPageAfterId(afterId, pageSize, childClass, null);
+    }
+
+    public Future<EntityPage> queryPageAfterId(final long afterId, final int pageSize,
+                                               final Class<? extends JackyEntity> childClass,
+                                               onResultListener<EntityPage> listener) {
+        return submitRead(new Callable<EntityPage>() {
+            @Override
+            public EntityPage call() {
+                return dao.queryPageAfterId(afterId, pageSize, childClass);
+            }
+        }, listener);
+    }
+
+    public Future<EntityPage> queryChangedSince(String sinceUpdateTime, long afterId, int pageSize,
+                                                Class<? extends JackyEntity> childClass) {
+        return queryChangedSince(sinceUpdateTime, afterId, pageSize, childClass, null);
+    }
+
+    public Future<EntityPage> queryChangedSince(final String sinceUpdateTime, final long afterId, final int pageSize,
+                                                final Class<? extends JackyEntity> childClass,
+                                                onResultListener<EntityPage> listener) {
+        return submitRead(new Callable<EntityPage>() {
+            @Override
+            public EntityPage call() {
+                return dao.queryChangedSince(sinceUpdateTime, afterId, pageSize, childClass);
+            }
+        }, listener);
+    }
+
+    /**
+     * 將自訂的寫入工作交給寫入執行緒 可能會與其他寫入合併在同一個交易中
+     * 工作內發生錯誤時請直接拋出例外 不要自行吃掉 否則無法判斷該交易是否需要退回
+     *
+     * @param callable
+     * @param listener 可為 null
+     * @param <T>
+     * @return
+     */
+    public static <T> Future<T> submitWrite(Callable<T> callable, onResultListener<T> listener) {
+        DaoTask<T> task = new DaoTask<>(callable, listener);
+        startWriterIfNeeded();
+        writeQueue.offer(task);
+        return task;
+    }
+
+    /**
+     * 將自訂的查詢工作交給讀取執行緒
+     *
+     * @param callable
+     * @param listener 可為 null
+     * @param <T>
+     * @return
+     */
+    public static <T> Future<T> submitRead(Callable<T> callable, onResultListener<T> listener) {
+        DaoTask<T> task = new DaoTask<>(callable, listener);
+        getReaderExecutor().execute(task);
+        return task;
+    }
+
+    private static synchronized void startWriterIfNeeded() {
+        if (writerThread != null) {
+            return;
+        }
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<DaoTask<?>> batch = new ArrayList<>(MAX_WRITE_BATCH_SIZE);
+                while (true) {
+                    try {
+                        batch.add(writeQueue.take());
+                    } catch (InterruptedException e) {
+                        LogUtils.w(TAG, "writer thread interrupted");
+                        continue;
+                    }
+                    writeQueue.drainTo(batch, MAX_WRITE_BATCH_SIZE - 1);
+                    runWriteBatch(batch);
+                    batch.clear();
+                }
+            }
+        }, "JackyAsyncDao-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private static synchronized ExecutorService getReaderExecutor() {
+        if (readerExecutor == null) {
+            JackyDBHelper.DBConfig dbConfig = JackyDBHelper.getDBConfig();
+            int readerThreadCount = dbConfig == null || dbConfig.getReaderThreadCount() <= 0 ?
+                    DEFAULT_READER_THREAD_COUNT : dbConfig.getReaderThreadCount();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(readerThreadCount, readerThreadCount,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "JackyAsyncDao-reader-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            readerExecutor = executor;
+        }
+        return readerExecutor;
+    }
+
+    private static synchronized Handler getMainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+
+    /**
+     * 多筆寫入時包在同一個交易中執行 交易提交成功後才會回傳結果
+     * 只要其中一筆拋出例外 整個交易就會退回 改成逐筆單獨執行 避免一筆錯誤拖累其他寫入
+     *
+     * @param batch
+     */
+    private static void runWriteBatch(ArrayList<DaoTask<?>> batch) {
+        JackyDBHelper instance = JackyDBHelper.getInstance();
+        if (batch.size() > 1 && instance != null) {
+            SQLiteDatabase db = instance.getWritableDatabase();
+            boolean isCommitted = false;
+            try {
+                db.beginTransaction();
+                try {
+                    boolean hasError = false;
+                    for (DaoTask<?> task : batch) {
+                        if (!task.execute()) {
+                            hasError = true;
+                            break;
+                        }
+                    }
+                    if (!hasError) {
+                        db.setTransactionSuccessful();
+                        isCommitted = true;
+                    }
+                } finally {
+                    db.endTransaction();
+                }
+            } catch (RuntimeException e) {
+                LogUtils.w(TAG, "runWriteBatch() failed: " + e.getMessage());
+                isCommitted = false;
+            }
+            if (isCommitted) {
+                for (DaoTask<?> task : batch) {
+                    task.publish();
+                }
+                return;
+            }
+        }
+        for (DaoTask<?> task : batch) {
+            task.execute();
+            task.publish();
+        }
+    }
+
+    /**
+     * 讀取的工作直接由 run() 執行
+     * 寫入的工作則由寫入執行緒先呼叫 execute() 等交易提交後再呼叫 publish() 設定結果
+     *
+     * @param <T>
+     */
+    private static class DaoTask<T> extends FutureTask<T> {
+        private final Callable<T> callable;
+        private final onResultListener<T> listener;
+        private T result;
+        private Throwable error;
+
+        DaoTask(Callable<T> callable, onResultListener<T> listener) {
+            super(callable);
+            this.callable = callable;
+            this.listener = listener;
+        }
+
+        /**
+         * 回傳 false 代表執行時拋出例外
+         *
+         * @return
+         */
+        boolean execute() {
+            result = null;
+            error = null;
+            if (isCancelled()) {
+                return true;
+            }
+            try {
+                result = callable.call();
+                return true;
+            } catch (Throwable t) {
+                error = t;
+                return false;
+            }
+        }
+
+        void publish() {
+            if (error != null) {
+                setException(error);
+            } else {
+                set(result);
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (listener == null || isCancelled()) {
+                return;
+            }
+            T value = null;
+            try {
+                value = get();
+            } catch (InterruptedException e) {
+                LogUtils.w(TAG, "onResult() failed: " + e.getMessage());
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                LogUtils.e(TAG, "async task failed: " + e.getCause());
+            }
+            final T finalValue = value;
+            getMainHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onResult(finalValue);
+                }
+            });
+        }
+    }
+}
@@ -2,6 +2,9 @@ package com.jackylibrary.model;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.jackylibrary.JackyDBHelper;
 import com.jackylibrary.LogUtils;
@@ -9,8 +12,11 @@ import com.jackylibrary.StringUtils;
 import com.jackylibrary.TimeUtils;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static com.jackylibrary.JackyDBHelper.KEY_ID;
 import static com.jackylibrary.JackyDBHelper.UPDATE_TIME;
@@ -22,7 +28,9 @@ import static com.jackylibrary.JackyDBHelper.UPDATE_TIME;
 public class JackyDao {
 
     private static final String TAG = JackyDao.class.getName();
+    public static final int DEFAULT_INSERT_CHUNK_SIZE = 1000;
     private ArrayList<ColumnInfo> columnInfos = new ArrayList<>();
+    private ArrayList<IndexInfo> indexInfos = new ArrayList<>();
 
     /**
      * 此方法會在 JackyDBHelper 的 onCreate() 中被調用
@@ -71,6 +79,21 @@ public class JackyDao {
                     "addColumnInfosByEntity() failed: you should extends JackyEntity instead of using it directly");
             return;
         }
+        JackyEntityBinding binding = EntityMapper.getBinding(childClass);
+        if (binding != null) {
+            //有編譯期產生的綁定類別 直接使用其欄位資訊 不需要再透過反射掃描
+            for (ColumnInfo columnInfo : binding.getColumnInfos()) {
+                addColumnAndType(columnInfo.getColumnName(), columnInfo.getDataType(),
+                        columnInfo.isAllowNull(), columnInfo.getDefaultValue());
+            }
+            for (IndexInfo indexInfo : binding.getIndexInfos()) {
+                addIndex(indexInfo.getIndexName(), indexInfo.isUnique(), indexInfo.getColumnNames());
+            }
+            return;
+        }
+        //有指定 name 的 @Indexed 需要等所有欄位都掃描完 才能合併成複合索引
+        LinkedHashMap<String, ArrayList<String>> namedIndexColumns = new LinkedHashMap<>();
+        HashMap<String, Boolean> namedIndexUnique = new HashMap<>();
         Field[] childFields = childClass.getDeclaredFields();
         for (Field field : childFields) {
             if(field.isSynthetic()){
@@ -86,7 +109,83 @@ public class JackyDao {
                 continue;
             }
             addColumnAndType(field.getName(), dataType);
+            Indexed indexed = field.getAnnotation(Indexed.class);
+            if (indexed == null) {
+                continue;
+            }
+            if (StringUtils.isNullOrEmpty(indexed.name())) {
+                addIndex(indexed.unique(), field.getName());
+            } else {
+                ArrayList<String> indexColumns = namedIndexColumns.get(indexed.name());
+                if (indexColumns == null) {
+                    indexColumns = new ArrayList<>();
+                    namedIndexColumns.put(indexed.name(), indexColumns);
+                    namedIndexUnique.put(indexed.name(), indexed.unique());
+                }
+                indexColumns.add(field.getName());
+            }
+        }
+        for (Map.Entry<String, ArrayList<String>> entry : namedIndexColumns.entrySet()) {
+            ArrayList<String> indexColumns = entry.getValue();
+            addIndex(entry.getKey(), namedIndexUnique.get(entry.getKey()),
+                    indexColumns.toArray(new String[indexColumns.size()]));
+        }
+    }
+
+    /**
+     * 此方法會在 JackyDBHelper 建立或升級資料表時被調用 用來建立需要的索引
+     * 開發者通常不需要覆寫此方法 只需要在 JackyDBHelper.prepare() 呼叫前先呼叫 addIndex()
+     *
+     * @return
+     */
+    public ArrayList<IndexInfo> getIndexInfos() {
+        return indexInfos;
+    }
+
+    /**
+     * 此方法用來讓開發者 替一個或多個欄位建立索引 索引名稱會自動以資料表名稱與欄位名稱命名
+     * 對經常用來查詢 (例如 queryData() 的 searchColumnNames) 的欄位建立索引
+     * 可讓查詢從掃描整張資料表變成透過索引查找
+     * 此方法建議於 JackyDBHelper.prepare() 呼叫前使用
+     *
+     * @param isUnique    為 true 時 索引欄位的值 (複合索引則為值的組合) 不可重複
+     * @param columnNames 傳入多個欄位時會建立複合索引 順序即為索引的欄位順序
+     */
+    public synchronized void addIndex(boolean isUnique, String... columnNames) {
+        addIndex(null, isUnique, columnNames);
+    }
+
+    /**
+     * 同 addIndex(boolean, String...) 但可自行指定索引名稱 索引名稱在整個資料庫中不可重複
+     *
+     * @param indexName   為空時會自動命名
+     * @param isUnique
+     * @param columnNames
+     */
+    public synchronized void addIndex(String indexName, boolean isUnique, String... columnNames) {
+        if (columnNames == null || columnNames.length == 0) {
+            LogUtils.w(this, "addIndex() failed: columnNames is empty");
+            return;
         }
+        for (String columnName : columnNames) {
+            if (StringUtils.isNullOrEmpty(columnName)) {
+                LogUtils.w(this, "addIndex() failed: columnName is empty");
+                return;
+            }
+        }
+        if (StringUtils.isNullOrEmpty(indexName)) {
+            StringBuilder sbForName = new StringBuilder("index_").append(getClass().getSimpleName());
+            for (String columnName : columnNames) {
+                sbForName.append("_").append(columnName);
+            }
+            indexName = sbForName.toString();
+        }
+        IndexInfo indexInfo = new IndexInfo(indexName, isUnique, columnNames.clone());
+        if (indexInfos.contains(indexInfo)) {
+            LogUtils.w(this, "addIndex() failed: indexInfo already exist");
+            return;
+        }
+        indexInfos.add(indexInfo);
     }
 
     private JackyDBHelper.DataType getDataTypeByField(Field field) {
@@ -132,6 +231,204 @@ public class JackyDao {
         return instance.getWritableDatabase().insert(getClass().getSimpleName(), null, cv);
     }
 
+    /**
+     * 一次插入多筆資料 使用預設的 chunkSize
+     *
+     * @param columnNames
+     * @param valuesList
+     * @return
+     * @see #insertAll(String[], List, int)
+     */
+    public long[] insertAll(String[] columnNames, List<String[]> valuesList) {
+        return insertAll(columnNames, valuesList, DEFAULT_INSERT_CHUNK_SIZE);
+    }
+
+    /**
+     * 一次插入多筆資料 所有資料共用同一個預先編譯好的 SQLiteStatement
+     * 並在交易 (transaction) 中批次寫入 避免每一筆資料都各自進行一次交易與 fsync
+     * chunkSize 為每次交易最多寫入的筆數 每寫完一個 chunk 就提交一次 讓其他的讀寫有機會插隊
+     * chunkSize <= 0 代表全部資料都在同一個交易中寫入
+     * 回傳每一筆資料插入後的 ID 順序與 valuesList 相同 插入失敗的項目為 -1
+     * 參數錯誤或 SQL 錯誤 (例如欄位不存在) 時回傳 null
+     *
+     * @param columnNames
+     * @param valuesList  每個元素為一筆資料 長度需與 columnNames 相同
+     * @param chunkSize
+     * @return
+     */
+    public long[] insertAll(String[] columnNames, final List<String[]> valuesList, int chunkSize) {
+        if (columnNames == null || valuesList == null) {
+            LogUtils.w(this, "insertAll() failed: invalid columnNames or valuesList");
+            return null;
+        }
+        final int columnCount = columnNames.length;
+        for (String[] values : valuesList) {
+            if (values == null || values.length != columnCount) {
+                LogUtils.w(this, "insertAll() failed: invalid values in valuesList");
+                return null;
+            }
+        }
+        return executeInsert("insertAll()", columnNames, valuesList.size(), chunkSize, new RowBinder() {
+            @Override
+            public boolean bindRow(SQLiteStatement statement, int row) {
+                String[] values = valuesList.get(row);
+                for (int i = 0; i < columnCount; i++) {
+                    if (values[i] == null) {
+                        statement.bindNull(i + 1);
+                    } else {
+                        statement.bindString(i + 1, values[i]);
+                    }
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * 一次插入多筆 entity 使用預設的 chunkSize
+     *
+     * @param entities
+     * @return
+     * @see #insertEntities(List, int)
+     */
+    public long[] insertEntities(List<? extends JackyEntity> entities) {
+        return insertEntities(entities, DEFAULT_INSERT_CHUNK_SIZE);
+    }
+
+    /**
+     * 一次插入多筆 entity 寫入的欄位為 entity 自己宣告的欄位 (不包含 _id 與 updateTime)
+     * 所有 entity 必須是同一個類別 寫入方式與 insertAll() 相同
+     * 回傳每一筆資料插入後的 ID 順序與 entities 相同 插入失敗的項目為 -1
+     * 參數錯誤或 SQL 錯誤 (例如欄位不存在) 時回傳 null
+     *
+     * @param entities
+     * @param chunkSize 每次交易最多寫入的筆數 <= 0 代表全部資料都在同一個交易中寫入
+     * @return
+     */
+    public long[] insertEntities(final List<? extends JackyEntity> entities, int chunkSize) {
+        if (entities == null) {
+            LogUtils.w(this, "insertEntities() failed: entities is null");
+            return null;
+        }
+        if (entities.isEmpty()) {
+            return new long[0];
+        }
+        JackyEntity firstEntity = entities.get(0);
+        if (firstEntity == null || firstEntity.getClass() == JackyEntity.class) {
+            LogUtils.w(this, "insertEntities() failed: invalid entity");
+            return null;
+        }
+        final Class<? extends JackyEntity> entityClass = firstEntity.getClass();
+        final EntityMapper mapper = EntityMapper.getMapper(entityClass);
+        if (mapper == null) {
+            LogUtils.w(this, "insertEntities() failed: mapper is null");
+            return null;
+        }
+        return executeInsert("insertEntities()", mapper.getColumnNames(), entities.size(), chunkSize, new RowBinder() {
+            @Override
+            public boolean bindRow(SQLiteStatement statement, int row) {
+                JackyEntity entity = entities.get(row);
+                if (entity == null || entity.getClass() != entityClass) {
+                    LogUtils.w(JackyDao.this, "insertEntities() failed: entity at " + row
+                            + " is not " + entityClass.getName());
+                    return false;
+                }
+                return mapper.bindInsert(statement, entity);
+            }
+        });
+    }
+
+    /**
+     * insertAll() 與 insertEntities() 共用的寫入流程
+     * statement 只編譯一次 每一筆資料綁定參數後執行 再清除綁定給下一筆使用
+     *
+     * @param methodName 用於 log 的呼叫端方法名稱
+     * @param columnNames
+     * @param rowCount
+     * @param chunkSize
+     * @param rowBinder
+     * @return
+     */
+    private long[] executeInsert(String methodName, String[] columnNames, int rowCount, int chunkSize, RowBinder rowBinder) {
+        JackyDBHelper instance = JackyDBHelper.getInstance();
+        if (instance == null) {
+            LogUtils.w(this, methodName + " failed: JackyDBHelper instance is null");
+            return null;
+        }
+        long[] ids = new long[rowCount];
+        if (rowCount == 0) {
+            return ids;
+        }
+        if (chunkSize <= 0) {
+            chunkSize = rowCount;
+        }
+        StringBuilder sbForSql = new StringBuilder("INSERT INTO ").append(getClass().getSimpleName());
+        if (columnNames.length == 0) {
+            sbForSql.append(" DEFAULT VALUES");
+        } else {
+            sbForSql.append(" (").append(columnNames[0]);
+            for (int i = 1; i < columnNames.length; i++) {
+                sbForSql.append(", ").append(columnNames[i]);
+            }
+            sbForSql.append(") VALUES (?");
+            for (int i = 1; i < columnNames.length; i++) {
+                sbForSql.append(", ?");
+            }
+            sbForSql.append(")");
+        }
+        SQLiteDatabase db = instance.getWritableDatabase();
+        SQLiteStatement statement = null;
+        try {
+            statement = db.compileStatement(sbForSql.toString());
+            int row = 0;
+            while (row < rowCount) {
+                int chunkEnd = Math.min(row + chunkSize, rowCount);
+                db.beginTransaction();
+                try {
+                    for (; row < chunkEnd; row++) {
+                        if (!rowBinder.bindRow(statement, row)) {
+                            ids[row] = -1;
+                            statement.clearBindings();
+                            continue;
+                        }
+                        try {
+                            ids[row] = statement.executeInsert();
+                        } catch (SQLException e) {
+                            //與 SQLiteDatabase.insert() 相同 單筆失敗不影響其他資料 只回傳 -1
+                            LogUtils.w(this, methodName + " failed at row " + row + ": " + e.getMessage());
+                            ids[row] = -1;
+                        }
+                        statement.clearBindings();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } catch (SQLException e) {
+            //欄位與資料表不符時 compileStatement() 會失敗 已經提交的 chunk 不會被還原
+            e.printStackTrace();
+            LogUtils.w(this, methodName + " failed: " + e.getMessage());
+            return null;
+        } finally {
+            if (statement != null) {
+                statement.close();
+            }
+        }
+        return ids;
+    }
+
+    private interface RowBinder {
+        /**
+         * 將第 row 筆資料綁定到 statement 回傳 false 代表該筆資料無法寫入
+         *
+         * @param statement
+         * @param row
+         * @return
+         */
+        boolean bindRow(SQLiteStatement statement, int row);
+    }
+
     /**
      * 此方法用來更新資料表的欄位資訊
      * searchColumnNames 可填入想查找的欄位 searchValues 則是想查找的欄位鎖定的目標值
@@ -251,99 +548,14 @@ public class JackyDao {
             LogUtils.w(this, "queryData() failed: JackyDBHelper instance is null");
             return null;
         }
-        StringBuilder sbForSql = new StringBuilder("SELECT * FROM " + getClass().getSimpleName()
-                + " WHERE " + searchColumnNames[0] + " =?");
-        for (int i = 1; i < searchColumnNames.length; i++) {
-            sbForSql.append(" AND ")
-                    .append(searchColumnNames[i])
-                    .append(" =?");
-        }
-        Cursor cursor = instance.getReadableDatabase().rawQuery(sbForSql.toString(), searchValues);
+        Cursor cursor = instance.getReadableDatabase().rawQuery(buildSelectSql(searchColumnNames), searchValues);
         if (cursor == null) {
             LogUtils.w(this, "queryData() failed: cursor is null");
             return null;
         }
-        ArrayList<JackyEntity> entities = null;
-        try {
-            if (cursor.moveToFirst()) {
-                entities = new ArrayList<>();
-                Field[] childFields = childClass.getDeclaredFields();
-                do {
-                    JackyEntity entity;
-                    try {
-                        entity = childClass.newInstance();
-                    } catch (IllegalAccessException e) {
-                        e.printStackTrace();
-                        LogUtils.e(this, "queryData() error: " + e.getMessage());
-                        return null;
-                    } catch (InstantiationException e) {
-                        e.printStackTrace();
-                        LogUtils.e(this, "queryData() error: " + e.getMessage());
-                        return null;
-                    }
-                    for (Field field : childFields) {
-                        int columnIndex = cursor.getColumnIndex(field.getName());
-                        if (columnIndex == -1) {
-                            continue;
-                        }
-                        String setterName = getSetterNameForFieldName(field.getName());
-                        if (StringUtils.isNullOrEmpty(setterName)) {
-                            LogUtils.w(this, "queryData() failed: setterName is empty");
-                            return null;
-                        }
-                        String typeName = field.getType().getSimpleName();
-                        try {
-                            switch (typeName) {
-                                case "int":
-                                    childClass.getDeclaredMethod(setterName, int.class)
-                                            .invoke(entity, cursor.getInt(columnIndex));
-                                    break;
-                                case "long":
-                                    childClass.getDeclaredMethod(setterName, long.class)
-                                            .invoke(entity, cursor.getLong(columnIndex));
-                                    break;
-                                case "byte":
-                                    childClass.getDeclaredMethod(setterName, byte.class)
-                                            .invoke(entity, (byte) cursor.getInt(columnIndex));
-                                    break;
-                                case "short":
-                                    childClass.getDeclaredMethod(setterName, short.class)
-                                            .invoke(entity, cursor.getShort(columnIndex));
-                                    break;
-                                case "float":
-                                    childClass.getDeclaredMethod(setterName, float.class)
-                                            .invoke(entity, cursor.getFloat(columnIndex));
-                                    break;
-                                case "double":
-                                    childClass.getDeclaredMethod(setterName, double.class)
-                                            .invoke(entity, cursor.getDouble(columnIndex));
-                                    break;
-                                case "String":
-                                    childClass.getDeclaredMethod(setterName, String.class)
-                                            .invoke(entity, cursor.getString(columnIndex));
-                                    break;
-                            }
-                        } catch (NoSuchMethodException e) {
-                            e.printStackTrace();
-                            LogUtils.e(this, "queryData() error: " + e.getMessage());
-                            return null;
-                        } catch (IllegalAccessException e) {
-                            e.printStackTrace();
-                            LogUtils.e(this, "queryData() error: " + e.getMessage());
-                            return null;
-                        } catch (InvocationTargetException e) {
-                            e.printStackTrace();
-                            LogUtils.e(this, "queryData() error: " + e.getMessage());
-                            return null;
-                        }
-                    }
-                    entity.set_id(cursor.getInt(cursor.getColumnIndex(KEY_ID)));
-                    entity.setUpdateTime(cursor.getString(cursor.getColumnIndex(UPDATE_TIME)));
-                    entities.add(entity);
-                } while (cursor.moveToNext());
-            }
-        } finally {
-            cursor.close();
+        ArrayList<JackyEntity> entities = readEntities(cursor, childClass, "queryData()");
+        if (entities == null || entities.isEmpty()) {
+            return null;
         }
         return entities;
     }
@@ -367,103 +579,294 @@ public class JackyDao {
             LogUtils.w(this, "queryData() failed: JackyDBHelper instance is null");
             return null;
         }
-        String sql = "SELECT * FROM " + getClass().getSimpleName();
-        Cursor cursor = instance.getReadableDatabase().rawQuery(sql, null);
+        Cursor cursor = instance.getReadableDatabase().rawQuery(buildSelectSql(null), null);
         if (cursor == null) {
             LogUtils.w(this, "queryData() failed: cursor is null");
             return null;
         }
-        ArrayList<JackyEntity> entities = null;
-        entities = new ArrayList<>();
-        Field[] childFields = childClass.getDeclaredFields();
+        return readEntities(cursor, childClass, "queryData()");
+    }
+
+    /**
+     * 以 _id 做分頁 回傳 _id 大於 afterId 的前 pageSize 筆資料 依 _id 由小到大排序
+     * 第一頁請傳入 afterId = 0 下一頁請傳入上一頁的 EntityPage.getLastId()
+     * 因為是直接從主鍵定位 不需要 OFFSET 掃過前面的資料 翻到後面的頁數也一樣快
+     * 失敗時回傳 null
+     *
+     * @param afterId
+     * @param pageSize
+     * @param childClass
+     * @return
+     */
+    public EntityPage queryPageAfterId(long afterId, int pageSize, Class<? extends JackyEntity> childClass) {
+        if (pageSize <= 0) {
+            LogUtils.w(this, "queryPageAfterId() failed: pageSize must be greater than 0");
+            return null;
+        }
+        String sql = "SELECT * FROM " + getClass().getSimpleName()
+                + " WHERE " + KEY_ID + " >?"
+                + " ORDER BY " + KEY_ID
+                + " LIMIT " + (pageSize + 1);
+        return queryPage("queryPageAfterId()", sql, new String[]{String.valueOf(afterId)},
+                pageSize, afterId, null, childClass);
+    }
+
+    /**
+     * 回傳 updateTime 在 sinceUpdateTime 之後有變動的資料 依 updateTime 再依 _id 由小到大排序 每次最多 pageSize 筆
+     * updateTime 相同的資料會再以 _id 區分 同一次同步中連續翻頁時 同一秒內大量變動的資料不會因為分頁被漏掉或重複
+     * 下一頁請傳入上一頁的 EntityPage.getLastUpdateTime() 與 EntityPage.getLastId()
+     * <p>
+     * 注意: updateTime 只精確到秒 而且是裝置的當地時間 (yyyy-MM-dd HH:mm:ss) 並不是遞增的變更序號
+     * 1. 在最後一筆資料的同一秒內 _id 較小的資料之後才被修改時 (updateTime, _id) 仍會落在上次的起點之前
+     * 因此每次開始新的同步時 請傳入上次同步最後的 updateTime 與 afterId = 0 重新讀取該秒的所有資料
+     * (會包含 updateTime 剛好等於 sinceUpdateTime 的資料) 這些資料可能與上次重複 請以 _id 自行去除重複
+     * 2. 日光節約時間結束或使用者把時間往回調時 之後修改的資料 updateTime 會比上次同步的時間還早 不會被查到
+     * 需要完全不漏資料時 請將起點再往前多退 (例如 1 小時) 或在 entity 中自行記錄遞增的版本號
+     * 資料量大時建議對 (updateTime, _id) 建立索引
+     * 失敗時回傳 null
+     *
+     * @param sinceUpdateTime
+     * @param afterId
+     * @param pageSize
+     * @param childClass
+     * @return
+     */
+    public EntityPage queryChangedSince(String sinceUpdateTime, long afterId, int pageSize,
+                                        Class<? extends JackyEntity> childClass) {
+        if (sinceUpdateTime == null) {
+            LogUtils.w(this, "queryChangedSince() failed: sinceUpdateTime is null");
+            return null;
+        }
+        if (pageSize <= 0) {
+            LogUtils.w(this, "queryChangedSince() failed: pageSize must be greater than 0");
+            return null;
+        }
+        String sql = "SELECT * FROM " + getClass().getSimpleName()
+                + " WHERE " + UPDATE_TIME + " >? OR (" + UPDATE_TIME + " =? AND " + KEY_ID + " >?)"
+                + " ORDER BY " + UPDATE_TIME + ", " + KEY_ID
+                + " LIMIT " + (pageSize + 1);
+        return queryPage("queryChangedSince()", sql,
+                new String[]{sinceUpdateTime, sinceUpdateTime, String.valueOf(afterId)},
+                pageSize, afterId, sinceUpdateTime, childClass);
+    }
+
+    /**
+     * 分頁查詢共用的流程 sql 需多查一筆 (LIMIT pageSize + 1) 用來判斷是否還有下一頁
+     *
+     * @return
+     */
+    private EntityPage queryPage(String methodName, String sql, String[] selectionArgs, int pageSize,
+                                 long afterId, String sinceUpdateTime, Class<? extends JackyEntity> childClass) {
+        if (childClass == null || childClass == JackyEntity.class) {
+            LogUtils.w(this,
+                    methodName + " failed: you should extends JackyEntity instead of using it directly");
+            return null;
+        }
+        JackyDBHelper instance = JackyDBHelper.getInstance();
+        if (instance == null) {
+            LogUtils.w(this, methodName + " failed: JackyDBHelper instance is null");
+            return null;
+        }
+        Cursor cursor = instance.getReadableDatabase().rawQuery(sql, selectionArgs);
+        if (cursor == null) {
+            LogUtils.w(this, methodName + " failed: cursor is null");
+            return null;
+        }
+        ArrayList<JackyEntity> entities = readEntities(cursor, childClass, methodName);
+        if (entities == null) {
+            return null;
+        }
+        boolean hasMore = entities.size() > pageSize;
+        if (hasMore) {
+            entities.remove(entities.size() - 1);
+        }
+        if (entities.isEmpty()) {
+            return new EntityPage(entities, false, afterId, sinceUpdateTime);
+        }
+        JackyEntity lastEntity = entities.get(entities.size() - 1);
+        return new EntityPage(entities, hasMore, lastEntity.get_id(), lastEntity.getUpdateTime());
+    }
+
+    /**
+     * 此方法用來逐筆查詢資料表的項目 查詢條件與 queryData() 相同
+     * 與 queryData() 不同的是 結果不會先全部放進 ArrayList 而是在走訪時才逐筆轉成 entity
+     * 適合用來處理資料量很大的資料表 使用完畢 (或提前結束) 時請呼叫 EntityIterator.close()
+     * 失敗時回傳 null
+     *
+     * @param searchColumnNames
+     * @param searchValues
+     * @param childClass
+     * @param reuseEntity       為 true 時每一筆資料都會重複使用同一個 entity 實例 不會產生新的物件
+     * @return
+     */
+    public EntityIterator iterateData(String[] searchColumnNames, String[] searchValues,
+                                      Class<? extends JackyEntity> childClass, boolean reuseEntity) {
+        if (searchColumnNames == null || searchValues == null || searchColumnNames.length != searchValues.length || searchColumnNames.length == 0) {
+            LogUtils.w(this, "iterateData() failed: invalid searchColumnNames or searchValues");
+            return null;
+        }
+        return openIterator("iterateData()", buildSelectSql(searchColumnNames), searchValues, childClass, reuseEntity);
+    }
+
+    /**
+     * 此方法用來逐筆查詢資料表所有的項目 說明請參考 iterateData()
+     * 失敗時回傳 null
+     *
+     * @param childClass
+     * @param reuseEntity 為 true 時每一筆資料都會重複使用同一個 entity 實例 不會產生新的物件
+     * @return
+     */
+    public EntityIterator iterateAllData(Class<? extends JackyEntity> childClass, boolean reuseEntity) {
+        return openIterator("iterateAllData()", buildSelectSql(null), null, childClass, reuseEntity);
+    }
+
+    /**
+     * 以 callback 的方式逐筆走訪查詢結果 查詢條件與 queryData() 相同
+     * cursor 會在走訪結束後自動關閉
+     * 回傳實際走訪的筆數 失敗時回傳 -1
+     *
+     * @param searchColumnNames
+     * @param searchValues
+     * @param childClass
+     * @param reuseEntity       為 true 時每一筆資料都會重複使用同一個 entity 實例 請不要在 callback 之外保留該參照
+     * @param listener          回傳 false 可提前結束走訪
+     * @return
+     */
+    public int forEachData(String[] searchColumnNames, String[] searchValues, Class<? extends JackyEntity> childClass,
+                           boolean reuseEntity, onEntityReadListener listener) {
+        return forEach("forEachData()", iterateData(searchColumnNames, searchValues, childClass, reuseEntity), listener);
+    }
+
+    /**
+     * 以 callback 的方式逐筆走訪資料表所有的項目 說明請參考 forEachData()
+     *
+     * @param childClass
+     * @param reuseEntity
+     * @param listener
+     * @return
+     */
+    public int forEachAllData(Class<? extends JackyEntity> childClass, boolean reuseEntity, onEntityReadListener listener) {
+        return forEach("forEachAllData()", iterateAllData(childClass, reuseEntity), listener);
+    }
+
+    public interface onEntityReadListener {
+        /**
+         * 每讀到一筆資料就會呼叫一次 回傳 false 代表不需要再繼續讀取
+         *
+         * @param entity
+         * @return
+         */
+        boolean onEntityRead(JackyEntity entity);
+    }
+
+    private int forEach(String methodName, EntityIterator iterator, onEntityReadListener listener) {
+        if (iterator == null) {
+            return -1;
+        }
+        if (listener == null) {
+            LogUtils.w(this, methodName + " failed: listener is null");
+            iterator.close();
+            return -1;
+        }
+        int count = 0;
         try {
-            while (cursor.moveToNext()) {
-                JackyEntity entity;
-                try {
-                    entity = childClass.newInstance();
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                    LogUtils.e(this, "queryData() error: " + e.getMessage());
-                    return null;
-                } catch (InstantiationException e) {
-                    e.printStackTrace();
-                    LogUtils.e(this, "queryData() error: " + e.getMessage());
-                    return null;
+            while (iterator.hasNext()) {
+                JackyEntity entity = iterator.next();
+                if (entity == null) {
+                    return -1;
                 }
-                for (Field field : childFields) {
-                    int columnIndex = cursor.getColumnIndex(field.getName());
-                    if (columnIndex == -1) {
-                        continue;
-                    }
-                    String setterName = getSetterNameForFieldName(field.getName());
-                    if (StringUtils.isNullOrEmpty(setterName)) {
-                        LogUtils.w(this, "queryData() failed: setterName is empty");
-                        return null;
-                    }
-                    String typeName = field.getType().getSimpleName();
-                    try {
-                        switch (typeName) {
-                            case "int":
-                                childClass.getDeclaredMethod(setterName, int.class)
-                                        .invoke(entity, cursor.getInt(columnIndex));
-                                break;
-                            case "long":
-                                childClass.getDeclaredMethod(setterName, long.class)
-                                        .invoke(entity, cursor.getLong(columnIndex));
-                                break;
-                            case "byte":
-                                childClass.getDeclaredMethod(setterName, byte.class)
-                                        .invoke(entity, (byte) cursor.getInt(columnIndex));
-                                break;
-                            case "short":
-                                childClass.getDeclaredMethod(setterName, short.class)
-                                        .invoke(entity, cursor.getShort(columnIndex));
-                                break;
-                            case "float":
-                                childClass.getDeclaredMethod(setterName, float.class)
-                                        .invoke(entity, cursor.getFloat(columnIndex));
-                                break;
-                            case "double":
-                                childClass.getDeclaredMethod(setterName, double.class)
-                                        .invoke(entity, cursor.getDouble(columnIndex));
-                                break;
-                            case "String":
-                                childClass.getDeclaredMethod(setterName, String.class)
-                                        .invoke(entity, cursor.getString(columnIndex));
-                                break;
-                        }
-                    } catch (NoSuchMethodException e) {
-                        e.printStackTrace();
-                        LogUtils.e(this, "queryData() error: " + e.getMessage());
-                        return null;
-                    } catch (IllegalAccessException e) {
-                        e.printStackTrace();
-                        LogUtils.e(this, "queryData() error: " + e.getMessage());
-                        return null;
-                    } catch (InvocationTargetException e) {
-                        e.printStackTrace();
-                        LogUtils.e(this, "queryData() error: " + e.getMessage());
-                        return null;
-                    }
+                count++;
+                if (!listener.onEntityRead(entity)) {
+                    break;
                 }
-                entity.set_id(cursor.getInt(cursor.getColumnIndex(KEY_ID)));
-                entity.setUpdateTime(cursor.getString(cursor.getColumnIndex(UPDATE_TIME)));
-                entities.add(entity);
             }
         } finally {
-            cursor.close();
+            iterator.close();
         }
-        return entities;
+        return count;
     }
 
-    private String getSetterNameForFieldName(String fieldName) {
-        if (StringUtils.isNullOrEmpty(fieldName)) {
+    private EntityIterator openIterator(String methodName, String sql, String[] selectionArgs,
+                                        Class<? extends JackyEntity> childClass, boolean reuseEntity) {
+        if (childClass == null || childClass == JackyEntity.class) {
+            LogUtils.w(this,
+                    methodName + " failed: you should extends JackyEntity instead of using it directly");
+            return null;
+        }
+        JackyDBHelper instance = JackyDBHelper.getInstance();
+        if (instance == null) {
+            LogUtils.w(this, methodName + " failed: JackyDBHelper instance is null");
+            return null;
+        }
+        EntityMapper mapper = EntityMapper.getMapper(childClass);
+        if (mapper == null) {
+            LogUtils.w(this, methodName + " failed: mapper is null");
             return null;
         }
-        if (fieldName.length() == 1) {
-            return "set" + fieldName.toUpperCase();
+        Cursor cursor = instance.getReadableDatabase().rawQuery(sql, selectionArgs);
+        if (cursor == null) {
+            LogUtils.w(this, methodName + " failed: cursor is null");
+            return null;
+        }
+        return new EntityIterator(cursor, mapper, reuseEntity);
+    }
+
+    /**
+     * 組出查詢此資料表的 SQL searchColumnNames 為 null 時代表查詢全部
+     *
+     * @param searchColumnNames
+     * @return
+     */
+    private String buildSelectSql(String[] searchColumnNames) {
+        StringBuilder sbForSql = new StringBuilder("SELECT * FROM ").append(getClass().getSimpleName());
+        if (searchColumnNames != null && searchColumnNames.length > 0) {
+            sbForSql.append(" WHERE ")
+                    .append(searchColumnNames[0])
+                    .append(" =?");
+            for (int i = 1; i < searchColumnNames.length; i++) {
+                sbForSql.append(" AND ")
+                        .append(searchColumnNames[i])
+                        .append(" =?");
+            }
+        }
+        return sbForSql.toString();
+    }
+
+    /**
+     * 此方法將 cursor 中所有的資料列轉成 entity 讀取完畢後會關閉 cursor
+     * 欄位索引與 setter 都由 EntityMapper 事先解析好 迴圈中每筆資料只做讀值與寫值
+     * 發生錯誤時回傳 null
+     *
+     * @param cursor
+     * @param childClass
+     * @param methodName 用於 log 的呼叫端方法名稱
+     * @return
+     */
+    private ArrayList<JackyEntity> readEntities(Cursor cursor, Class<? extends JackyEntity> childClass, String methodName) {
+        try {
+            EntityMapper mapper = EntityMapper.getMapper(childClass);
+            if (mapper == null) {
+                LogUtils.w(this, methodName + " failed: mapper is null");
+                return null;
+            }
+            ArrayList<JackyEntity> entities = new ArrayList<>(cursor.getCount());
+            int[] columnIndices = mapper.bindColumns(cursor);
+            while (cursor.moveToNext()) {
+                JackyEntity entity = mapper.newEntity();
+                if (entity == null) {
+                    LogUtils.e(this, methodName + " error: can not create entity of " + childClass.getName());
+                    return null;
+                }
+                if (!mapper.readEntity(cursor, columnIndices, entity)) {
+                    LogUtils.e(this, methodName + " error: can not read entity of " + childClass.getName());
+                    return null;
+                }
+                entities.add(entity);
+            }
+            return entities;
+        } finally {
+            cursor.close();
         }
-        return "set" + fieldName.substring(0, 1).toUpperCase() + fieldName.substring(1);
     }
 
     /**
@@ -538,4 +941,48 @@ public class JackyDao {
             return this.columnName == null ? -1 : this.columnName.length();
         }
     }
+
+    public static class IndexInfo {
+        private String indexName;
+        private boolean isUnique;
+        private String[] columnNames;
+
+        public IndexInfo(String indexName, boolean isUnique, String[] columnNames) {
+            this.indexName = indexName;
+            this.isUnique = isUnique;
+            this.columnNames = columnNames;
+        }
+
+        public String getIndexName() {
+            return indexName;
+        }
+
+        public boolean isUnique() {
+            return isUnique;
+        }
+
+        public String[] getColumnNames() {
+            return columnNames;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == null) {
+                return false;
+            }
+            if (!(obj instanceof IndexInfo)) {
+                return false;
+            }
+            IndexInfo indexInfo = (IndexInfo) obj;
+            if (indexInfo.indexName == null) {
+                return false;
+            }
+            return indexInfo.indexName.equals(this.indexName);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.indexName == null ? -1 : this.indexName.hashCode();
+        }
+    }
 }
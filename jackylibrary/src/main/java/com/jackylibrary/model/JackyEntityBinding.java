@@ -0,0 +1,81 @@
+package com.jackylibrary.model;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+
+/**
+ * 由 jackylibrary-compiler 在編譯期針對每個 JackyEntity 子類別產生的綁定類別的父類別
+ * 產生的類別與 entity 放在同一個 package 名稱為 entity 名稱加上 BINDING_POSTFIX
+ * (巢狀類別會以 _ 連接外部類別名稱 例如 Outer_Inner_JackyBinding)
+ * 有產生綁定類別的 entity 在建立欄位資訊 讀取與寫入資料時都不需要再使用反射
+ * 沒有產生綁定類別的 entity 則會自動改走原本反射的流程
+ * 開發者不需要自行繼承此類別
+ */
+public abstract class JackyEntityBinding {
+
+    public static final String BINDING_POSTFIX = "_JackyBinding";
+
+    /**
+     * 回傳該 entity 對應的資料表欄位資訊 用來取代 JackyDao.addColumnInfosByEntity() 中的反射掃描
+     *
+     * @return
+     */
+    public abstract ArrayList<JackyDao.ColumnInfo> getColumnInfos();
+
+    /**
+     * 回傳該 entity 透過 @Indexed 宣告的索引資訊 索引名稱為空時由 JackyDao 自動命名
+     * 沒有宣告索引的 entity 不會覆寫此方法
+     *
+     * @return
+     */
+    public ArrayList<JackyDao.IndexInfo> getIndexInfos() {
+        return new ArrayList<>();
+    }
+
+    /**
+     * 回傳 readFields() 與 bindInsert() 所使用的欄位名稱 兩者的索引順序皆與此陣列一致
+     *
+     * @return
+     */
+    public abstract String[] getColumnNames();
+
+    /**
+     * 建立一個新的 entity 實例
+     *
+     * @return
+     */
+    public abstract JackyEntity newEntity();
+
+    /**
+     * 將 cursor 目前所在的資料列寫入 entity
+     * columnIndices 的索引順序與 getColumnNames() 一致 值為 -1 代表 cursor 中沒有該欄位
+     *
+     * @param cursor
+     * @param columnIndices
+     * @param entity
+     */
+    public abstract void readFields(Cursor cursor, int[] columnIndices, JackyEntity entity);
+
+    /**
+     * 將 entity 的欄位值依 getColumnNames() 的順序綁定到 statement 的第 1 ~ n 個參數
+     *
+     * @param statement
+     * @param entity
+     */
+    public abstract void bindInsert(SQLiteStatement statement, JackyEntity entity);
+
+    /**
+     * 回傳該 entity 類別對應的綁定類別名稱
+     *
+     * @param entityClass
+     * @return
+     */
+    static String getBindingClassName(Class<? extends JackyEntity> entityClass) {
+        String className = entityClass.getName();
+        int lastDot = className.lastIndexOf('.');
+        String packagePrefix = lastDot == -1 ? "" : className.substring(0, lastDot + 1);
+        return packagePrefix + className.substring(lastDot + 1).replace('$', '_') + BINDING_POSTFIX;
+    }
+}
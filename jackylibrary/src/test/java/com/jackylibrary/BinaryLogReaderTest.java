@@ -0,0 +1,241 @@
+package com.jackylibrary;
+
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * BinaryLogWriter 寫入後以 BinaryLogReader 讀回 確認內容相同 以及截斷的資料可以被略過
+ */
+public class BinaryLogReaderTest {
+
+    private static final long START_TIME = 1577836800000L;
+
+    @Test
+    public void readMultipleSessions() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArrayList<LogEntry> expected = new ArrayList<>();
+        expected.addAll(writeSession(out, START_TIME, 5, "MainActivity"));
+        expected.addAll(writeSession(out, START_TIME + 60000, 5, "MainActivity"));
+        expected.addAll(writeSession(out, START_TIME + 120000, 3, "Service"));
+
+        assertRecords(expected, readAll(out.toByteArray()));
+    }
+
+    @Test
+    public void readNegativeDeltas() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryLogWriter writer = new BinaryLogWriter();
+        long[] timestamps = {START_TIME, START_TIME - 1, START_TIME - 86400000L, START_TIME + 5, 0, START_TIME};
+        ArrayList<LogEntry> expected = new ArrayList<>();
+        for (int i = 0; i < timestamps.length; i++) {
+            writer.writeRecord(out, timestamps[i], LogUtils.INFO, "Clock", "log " + i);
+            expected.add(new LogEntry(timestamps[i], LogUtils.INFO, "Clock", "log " + i));
+        }
+
+        assertRecords(expected, readAll(out.toByteArray()));
+    }
+
+    @Test
+    public void readNonAsciiTagsAndMessages() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryLogWriter writer = new BinaryLogWriter();
+        String[] tags = {"首頁", "設定😀", "ASCII", "首頁"};
+        String[] messages = {"中文內容", "emoji 👍", "", null};
+        ArrayList<LogEntry> expected = new ArrayList<>();
+        for (int i = 0; i < tags.length; i++) {
+            writer.writeRecord(out, START_TIME + i, LogUtils.WARN, tags[i], messages[i]);
+            expected.add(new LogEntry(START_TIME + i, LogUtils.WARN, tags[i],
+                    messages[i] == null ? "" : messages[i]));
+        }
+
+        assertRecords(expected, readAll(out.toByteArray()));
+    }
+
+    @Test
+    public void readTruncatedTail() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryLogWriter writer = new BinaryLogWriter();
+        ArrayList<LogEntry> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            writer.writeRecord(out, START_TIME + i, LogUtils.ERROR, "Tail", "log " + i);
+            expected.add(new LogEntry(START_TIME + i, LogUtils.ERROR, "Tail", "log " + i));
+        }
+        int completeLength = out.size();
+        writer.writeRecord(out, START_TIME + 5, LogUtils.ERROR, "NewTag", "the last record is truncated");
+        byte[] bytes = out.toByteArray();
+
+        //最後一筆在任何位置被截斷 前面的 log 都要完整讀回
+        for (int length = completeLength; length < bytes.length; length++) {
+            BinaryLogReader reader = new BinaryLogReader(new ByteArrayInputStream(Arrays.copyOf(bytes, length)));
+            assertRecords(expected, readAll(reader));
+            //tag 定義完整時會被讀取 只有不完整的 log 會被略過
+            assertTrue(reader.getSkippedByteCount() <= length - completeLength);
+        }
+    }
+
+    @Test
+    public void readSessionAfterTornRecord() throws IOException {
+        ByteArrayOutputStream firstSession = new ByteArrayOutputStream();
+        BinaryLogWriter writer = new BinaryLogWriter();
+        ArrayList<LogEntry> firstRecords = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            writer.writeRecord(firstSession, START_TIME + i, LogUtils.DEBUG, "Torn", "first session " + i);
+            firstRecords.add(new LogEntry(START_TIME + i, LogUtils.DEBUG, "Torn", "first session " + i));
+        }
+        int completeLength = firstSession.size();
+        //新的 tag 會先寫入 tag 定義 截斷的位置也可能在 tag 定義中
+        writer.writeRecord(firstSession, START_TIME + 4, LogUtils.DEBUG, "Flush", "this record is torn by a failed write");
+        byte[] firstBytes = firstSession.toByteArray();
+
+        ByteArrayOutputStream secondSession = new ByteArrayOutputStream();
+        ArrayList<LogEntry> secondRecords = writeSession(secondSession, START_TIME + 60000, 5, "Torn");
+
+        //第一段最後一筆在任何位置被截斷 接著是重新開啟檔案後寫入的第二段
+        for (int length = completeLength + 1; length < firstBytes.length; length++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(firstBytes, 0, length);
+            secondSession.writeTo(out);
+            ArrayList<LogEntry> expected = new ArrayList<>(firstRecords);
+            expected.addAll(secondRecords);
+            BinaryLogReader reader = new BinaryLogReader(new ByteArrayInputStream(out.toByteArray()));
+            assertRecords(expected, readAll(reader));
+            assertTrue(reader.getSkippedByteCount() <= length - completeLength);
+        }
+    }
+
+    @Test
+    public void skipGarbageBeforeHeader() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{0x02, 0x01, 'J', 'L', 'O', 0x7F, 0x00});
+        ArrayList<LogEntry> expected = writeSession(out, START_TIME, 3, "Garbage");
+
+        BinaryLogReader reader = new BinaryLogReader(new ByteArrayInputStream(out.toByteArray()));
+        assertRecords(expected, readAll(reader));
+        assertEquals(7, reader.getSkippedByteCount());
+    }
+
+    @Test
+    public void readHeaderBytesInsideMessage() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryLogWriter writer = new BinaryLogWriter();
+        //內容中與檔頭相同的 bytes 只是內容 不能影響後面的 log
+        String[] messages = {"hello", "JLOG\u0001 inside message", "JLOG\u0002JLOG", "after"};
+        ArrayList<LogEntry> expected = new ArrayList<>();
+        for (int i = 0; i < messages.length; i++) {
+            writer.writeRecord(out, START_TIME + i, LogUtils.INFO, "Payload", messages[i]);
+            expected.add(new LogEntry(START_TIME + i, LogUtils.INFO, "Payload", messages[i]));
+        }
+
+        BinaryLogReader reader = new BinaryLogReader(new ByteArrayInputStream(out.toByteArray()));
+        assertRecords(expected, readAll(reader));
+        assertEquals(0, reader.getSkippedByteCount());
+    }
+
+    @Test
+    public void skipCorruptedRecordUntilNextSession() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArrayList<LogEntry> expected = writeSession(out, START_TIME, 3, "Corrupt");
+        int firstSessionEnd = out.size();
+        int corruptedOffset = firstSessionEnd + 20;
+        writeSession(out, START_TIME + 100, 3, "Corrupt");
+        int secondSessionEnd = out.size();
+        expected.addAll(writeSession(out, START_TIME + 200, 3, "Corrupt"));
+        byte[] bytes = out.toByteArray();
+        bytes[corruptedOffset] ^= 0x10;
+
+        //CRC32 不符的那筆之後 到下一個檔頭前的 log 時間基準可能不正確 一併略過
+        BinaryLogReader reader = new BinaryLogReader(new ByteArrayInputStream(bytes));
+        assertRecords(expected, readAll(reader));
+        assertTrue(reader.getSkippedByteCount() > 0);
+        assertTrue(reader.getSkippedByteCount() <= secondSessionEnd - firstSessionEnd);
+    }
+
+    @Test
+    public void truncateOversizedMessage() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryLogWriter writer = new BinaryLogWriter();
+        char[] chars = new char[BinaryLogReader.MAX_BODY_LENGTH];
+        Arrays.fill(chars, '長');
+        writer.writeRecord(out, START_TIME, LogUtils.INFO, "Large", new String(chars));
+        writer.writeRecord(out, START_TIME + 1, LogUtils.INFO, "Large", "after");
+
+        ArrayList<LogEntry> records = readAll(out.toByteArray());
+        assertEquals(2, records.size());
+        String message = records.get(0).getMessage();
+        assertTrue(message.length() > 0);
+        assertTrue(message.getBytes("UTF-8").length <= BinaryLogReader.MAX_BODY_LENGTH);
+        assertEquals("after", records.get(1).getMessage());
+    }
+
+    @Test
+    public void exportTextFlushesOnFailure() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeSession(out, START_TIME, 100, "Export");
+        final byte[] bytes = out.toByteArray();
+        //讀到一半時拋出 IOException
+        InputStream failingInput = new InputStream() {
+            private int position = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (position >= bytes.length / 2) {
+                    throw new IOException("read failed");
+                }
+                return bytes[position++] & 0xFF;
+            }
+        };
+        StringWriter text = new StringWriter();
+        try {
+            BinaryLogReader.exportText(new BinaryLogReader(failingInput), new BufferedWriter(text));
+            fail();
+        } catch (IOException e) {
+            assertEquals("read failed", e.getMessage());
+        }
+        assertTrue(text.toString().contains("I Export: log 0\n"));
+    }
+
+    private static ArrayList<LogEntry> writeSession(ByteArrayOutputStream out, long startTime,
+                                                    int count, String tag) {
+        BinaryLogWriter writer = new BinaryLogWriter();
+        ArrayList<LogEntry> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            writer.writeRecord(out, startTime + i * 7, LogUtils.INFO, tag, "log " + i);
+            records.add(new LogEntry(startTime + i * 7, LogUtils.INFO, tag, "log " + i));
+        }
+        return records;
+    }
+
+    private static ArrayList<LogEntry> readAll(byte[] bytes) throws IOException {
+        return readAll(new BinaryLogReader(new ByteArrayInputStream(bytes)));
+    }
+
+    private static ArrayList<LogEntry> readAll(BinaryLogReader reader) throws IOException {
+        ArrayList<LogEntry> records = new ArrayList<>();
+        LogEntry record;
+        while ((record = reader.read()) != null) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static void assertRecords(ArrayList<LogEntry> expected,
+                                      ArrayList<LogEntry> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+            assertEquals(expected.get(i).getLevel(), actual.get(i).getLevel());
+            assertEquals(expected.get(i).getTag(), actual.get(i).getTag());
+            assertEquals(expected.get(i).getMessage(), actual.get(i).getMessage());
+        }
+    }
+}
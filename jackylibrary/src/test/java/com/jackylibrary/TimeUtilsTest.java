@@ -0,0 +1,115 @@
+package com.jackylibrary;
+
+import org.junit.Test;
+
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * 比較 TimeUtils 常用格式的快速路徑與 SimpleDateFormat 的結果
+ */
+public class TimeUtilsTest {
+
+    private static final String[] PATTERNS = {"yyyyMMdd", "HH:mm:ss ", "HH:mm:ss", "yyyy-MM-dd", "yyyy-MM-dd HH:mm:ss"};
+
+    @Test
+    public void formatRandomTimestamps() {
+        Random random = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            //約 1900 ~ 2100 年
+            long timeStamp = (long) ((random.nextDouble() - 0.35) * 6.4e12);
+            assertSameAsSimpleDateFormat(timeStamp);
+        }
+    }
+
+    @Test
+    public void formatAroundSecondBoundary() {
+        long second = 1577836800000L + 12345000L;
+        //同一秒內的快取 以及跨秒時的更新 前後順序都要正確
+        long[] timeStamps = {second - 1, second, second + 999, second + 1000, second + 500, second - 1000, second};
+        for (long timeStamp : timeStamps) {
+            assertSameAsSimpleDateFormat(timeStamp);
+        }
+    }
+
+    @Test
+    public void formatAroundDayBoundary() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2019, Calendar.DECEMBER, 31, 23, 59, 59);
+        long lastSecondOfYear = calendar.getTimeInMillis();
+        long[] timeStamps = {lastSecondOfYear, lastSecondOfYear + 999, lastSecondOfYear + 1000, lastSecondOfYear + 1001,
+                lastSecondOfYear - 86400000L};
+        for (long timeStamp : timeStamps) {
+            assertSameAsSimpleDateFormat(timeStamp);
+        }
+    }
+
+    @Test
+    public void formatNegativeTimestamps() {
+        long[] timeStamps = {-1, -999, -1000, -1001, -86400000L - 1, -2208988800000L, 0};
+        for (long timeStamp : timeStamps) {
+            assertSameAsSimpleDateFormat(timeStamp);
+        }
+    }
+
+    @Test
+    public void formatAfterTimeZoneChange() throws InterruptedException {
+        TimeZone originalTimeZone = TimeZone.getDefault();
+        long timeStamp = 1577836800000L;
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Taipei"));
+            //時區最晚在 1 秒後生效
+            Thread.sleep(1100);
+            assertSameAsSimpleDateFormat(timeStamp);
+            assertEquals("2020-01-01 08:00:00", TimeUtils.getDateFormat("yyyy-MM-dd HH:mm:ss", timeStamp));
+
+            TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+            Thread.sleep(1100);
+            assertSameAsSimpleDateFormat(timeStamp);
+            assertEquals("2019-12-31 16:00:00", TimeUtils.getDateFormat("yyyy-MM-dd HH:mm:ss", timeStamp));
+            //不經過快速路徑的格式也要使用新的時區
+            assertEquals("2019/12/31 16", TimeUtils.getDateFormat("yyyy/MM/dd HH", timeStamp));
+        } finally {
+            TimeZone.setDefault(originalTimeZone);
+            //等還原的時區生效 避免影響其他測試
+            Thread.sleep(1100);
+        }
+    }
+
+    @Test
+    public void formatWithNonAsciiDigits() {
+        Locale originalLocale = Locale.getDefault();
+        try {
+            Locale locale = new Locale("ar", "EG");
+            Locale.setDefault(locale);
+            //語系的數字不是 0 ~ 9 時交給 SimpleDateFormat 結果要與 SimpleDateFormat 相同
+            assertSameAsSimpleDateFormat(1577836800000L);
+            if (DecimalFormatSymbols.getInstance(locale).getZeroDigit() != '0') {
+                assertFalse(TimeUtils.getDateFormat("yyyyMMdd", 1577836800000L).equals("20200101"));
+            }
+            Locale.setDefault(Locale.US);
+            assertSameAsSimpleDateFormat(1577836800000L);
+        } finally {
+            Locale.setDefault(originalLocale);
+        }
+    }
+
+    private static void assertSameAsSimpleDateFormat(long timeStamp) {
+        Date date = new Date(timeStamp);
+        for (String pattern : PATTERNS) {
+            String expected = new SimpleDateFormat(pattern, Locale.getDefault()).format(date);
+            assertEquals(pattern + " " + timeStamp, expected, TimeUtils.getDateFormat(pattern, timeStamp));
+            StringBuilder sb = new StringBuilder("prefix");
+            TimeUtils.appendDateFormat(sb, pattern, timeStamp);
+            assertEquals(pattern + " " + timeStamp, "prefix" + expected, sb.toString());
+        }
+    }
+}